@@ -0,0 +1,36 @@
+/****************
+ * Splay Tree Adapter
+ * Spring 2024
+ *
+ * Gives the JMH benchmarks (package splaytree.jmh) a SplayTree<Integer>
+ * through splaytree.jmh.BenchmarkTree, since they cannot name the default
+ * package's classes themselves.
+ */
+import java.util.stream.IntStream;
+import splaytree.jmh.BenchmarkTree;
+
+public class SplayTreeAdapter implements BenchmarkTree {
+    final SplayTree<Integer> tree = new SplayTree<>();
+
+    // A tree holding the keys 0..preload-1 with a node pool of the given capacity
+    public SplayTreeAdapter(int preload, int pool) {
+        tree.setNodePool(pool);
+        if (preload > 0) tree.buildFromSorted(IntStream.range(0, preload).iterator());
+    }
+
+    public void insert(Integer e) {
+        tree.insert(e);
+    }
+
+    public boolean delete(Integer e) {
+        return tree.delete(e);
+    }
+
+    public int rangeCount(Integer a, Integer b) {
+        return tree.rangeCount(a, b);
+    }
+
+    public boolean contains(Integer e) {
+        return tree.contains(e);
+    }
+}
@@ -0,0 +1,35 @@
+/****************
+ * Benchmark Tree
+ * Spring 2024
+ *
+ * The operations SplayTreeBenchmark measures, on a SplayTree<Integer>.
+ *
+ * NOTE:
+ * JMH only accepts benchmarks in a named package, and code in a named package
+ * cannot refer to the splay tree classes in the default package. So the
+ * benchmarks reach the tree through this interface, implemented by
+ * SplayTreeAdapter (in the default package) and created by name in newTree.
+ * It has a single implementation, so the JIT inlines every call through it.
+ */
+package splaytree.jmh;
+
+public interface BenchmarkTree {
+    void insert(Integer e);
+
+    boolean delete(Integer e);
+
+    int rangeCount(Integer a, Integer b);
+
+    boolean contains(Integer e);
+
+    // A splay tree holding the keys 0..preload-1 and keeping a node pool of the
+    // given capacity (see SplayTree.setNodePool)
+    static BenchmarkTree newTree(int preload, int pool) {
+        try {
+            return Class.forName("SplayTreeAdapter").asSubclass(BenchmarkTree.class)
+                .getConstructor(int.class, int.class).newInstance(preload, pool);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create SplayTreeAdapter", e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/****************
+ * Splay Tree Benchmark
+ * Spring 2024
+ *
+ * JMH benchmarks of the splay tree's hot operations (insert, delete,
+ * rangeCount, find and churn) at several sizes and under several key
+ * distributions:
+ *
+ *      sequential: keys 0, 1, 2, ... in order
+ *      uniform:    keys drawn uniformly at random from [0, 2n) ([0, n) for churn)
+ *      zipf:       keys drawn from a Zipf distribution (exponent 1), so a few
+ *                  keys are very hot, scattered over [0, n)
+ *
+ * insert grows an empty tree to n elements and then starts over with a new
+ * empty tree. The other operations run on a tree preloaded with the keys
+ * 0..n-1 (so about half of the uniform finds miss), cycling through
+ * min(n, 1_000_000) keys. A churn operation deletes a key and inserts it
+ * straight back, as a tree holding a steady size does; its keys are all in the
+ * tree, so every delete hits and the size never changes. With -p pool=64 the
+ * deleted nodes are reused and its gc.alloc.rate.norm should drop to about zero.
+ *
+ * Every benchmark runs in both Throughput mode (ops/us) and SampleTime mode,
+ * whose p0.99 line is the 99th percentile latency of a single operation. Run
+ * with -prof gc for the bytes allocated per operation (gc.alloc.rate.norm).
+ *
+ * NOTE:
+ * delete empties its tree, so its state rebuilds the tree in a Level.Invocation
+ * setup once every key has been used. JMH then has to timestamp every call
+ * on its own, which adds the cost of reading the clock (tens of ns) to the
+ * throughput of delete but not of the other operations.
+ *
+ * Usage (see the README):
+ *      mvn package
+ *      java -jar target/benchmarks.jar -prof gc
+ *      java -jar target/benchmarks.jar churn -p size=1000000 -p pool=0,64 -prof gc
+ */
+package splaytree.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SplayTreeBenchmark {
+    static final int MAX_KEYS = 1_000_000;  // Keys cycled through (except by insert)
+
+    // The parameters every state shares, and its keys
+    @State(Scope.Thread)
+    public abstract static class Keys {
+        @Param({"1000", "1000000", "10000000"})
+        public int size;
+
+        @Param({"sequential", "uniform", "zipf"})
+        public String dist;
+
+        @Param({"0"})
+        public int pool;  // Node pool capacity (see SplayTree.setNodePool)
+
+        BenchmarkTree tree;
+        Integer[] keys;
+        int next;
+
+        // The next key, starting over at the first once they have all been used
+        Integer nextKey() {
+            if (next == keys.length) next = 0;
+            return keys[next++];
+        }
+    }
+
+    // An empty tree that insert grows to size elements
+    public static class Growing extends Keys {
+        @Setup(Level.Trial)
+        public void setUp() {
+            keys = keys(dist, size, 2L * size, size, new Random(1000L * size));
+            tree = BenchmarkTree.newTree(0, pool);
+        }
+    }
+
+    // A tree holding 0..size-1 for find
+    public static class Preloaded extends Keys {
+        @Setup(Level.Trial)
+        public void setUp() {
+            keys = keys(dist, size, 2L * size, Math.min(size, MAX_KEYS), new Random(1000L * size));
+            tree = BenchmarkTree.newTree(size, pool);
+        }
+    }
+
+    // A tree holding 0..size-1 for rangeCount, with ranges up to 1% of it wide
+    public static class Ranges extends Preloaded {
+        Integer[] highs;
+
+        @Override
+        @Setup(Level.Trial)
+        public void setUp() {
+            super.setUp();
+            Random rand = new Random(1000L * size + 1);
+            int maxWidth = Math.max(1, size / 100);
+            highs = new Integer[keys.length];
+            for (int i = 0; i < keys.length; i++) highs[i] = keys[i] + rand.nextInt(maxWidth);
+        }
+    }
+
+    // A tree holding 0..size-1 for churn, whose keys are all in the tree
+    public static class Churning extends Keys {
+        @Setup(Level.Trial)
+        public void setUp() {
+            keys = keys(dist, size, size, Math.min(size, MAX_KEYS), new Random(1000L * size));
+            tree = BenchmarkTree.newTree(size, pool);
+        }
+    }
+
+    // A tree holding 0..size-1 for delete, rebuilt once every key has been deleted
+    public static class Draining extends Keys {
+        @Setup(Level.Trial)
+        public void setUp() {
+            keys = keys(dist, size, 2L * size, Math.min(size, MAX_KEYS), new Random(1000L * size));
+            next = keys.length;
+        }
+
+        @Setup(Level.Invocation)
+        public void refill() {
+            if (next < keys.length) return;
+            tree = BenchmarkTree.newTree(size, pool);
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public void insert(Growing s) {
+        if (s.next == s.keys.length) {
+            s.tree = BenchmarkTree.newTree(0, s.pool);
+            s.next = 0;
+        }
+        s.tree.insert(s.keys[s.next++]);
+    }
+
+    @Benchmark
+    public boolean delete(Draining s) {
+        return s.tree.delete(s.keys[s.next++]);
+    }
+
+    @Benchmark
+    public int rangeCount(Ranges s) {
+        if (s.next == s.keys.length) s.next = 0;
+        int i = s.next++;
+        return s.tree.rangeCount(s.keys[i], s.highs[i]);
+    }
+
+    @Benchmark
+    public boolean find(Preloaded s) {
+        return s.tree.contains(s.nextKey());
+    }
+
+    @Benchmark
+    public boolean churn(Churning s) {
+        Integer key = s.nextKey();
+        boolean hit = s.tree.delete(key);
+        s.tree.insert(key);
+        return hit;
+    }
+
+    // count keys for a tree of size n drawn from the distribution
+    // (uniform keys come from [0, span), so those from n up miss the preloaded tree)
+    static Integer[] keys(String dist, int n, long span, int count, Random rand) {
+        Integer[] keys = new Integer[count];
+        switch (dist) {
+            case "sequential":
+                for (int i = 0; i < count; i++) keys[i] = i;
+                break;
+            case "uniform":
+                for (int i = 0; i < count; i++) keys[i] = (int) (rand.nextDouble() * span);
+                break;
+            case "zipf":
+                Zipf zipf = new Zipf(n, 1.0);
+                for (int i = 0; i < count; i++) {
+                    // Scatter the hot ranks over the key space
+                    keys[i] = (int) Math.floorMod(zipf.sample(rand) * 2654435761L, (long) n);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + dist);
+        }
+        return keys;
+    }
+}
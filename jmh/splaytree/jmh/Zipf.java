@@ -0,0 +1,62 @@
+/****************
+ * Zipf
+ * Spring 2024
+ *
+ * A Zipf distribution over 1..n for benchmark keys, sampled by
+ * rejection-inversion (Hormann and Derflinger), which needs no table of size n.
+ */
+package splaytree.jmh;
+
+import java.util.Random;
+
+class Zipf {
+    final int n;
+    final double exponent;
+    final double hIntegralX1;
+    final double hIntegralN;
+    final double threshold;
+
+    Zipf(int n, double exponent) {
+        this.n = n;
+        this.exponent = exponent;
+        hIntegralX1 = hIntegral(1.5) - 1;
+        hIntegralN = hIntegral(n + 0.5);
+        threshold = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    int sample(Random rand) {
+        while (true) {
+            double u = hIntegralN + rand.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) k = 1;
+            else if (k > n) k = n;
+            if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k)) return k;
+        }
+    }
+
+    double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    double hIntegralInverse(double x) {
+        double t = x * (1 - exponent);
+        if (t < -1) t = -1;
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, accurate near 0
+    static double helper1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, accurate near 0
+    static double helper2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+}
@@ -0,0 +1,258 @@
+/****************
+ * Aggregate Splay Tree
+ * Spring 2024
+ *
+ * A splay tree mapping keys to values which, besides the size of each subtree,
+ * keeps the combination of all the values in it under a user supplied Monoid
+ * (a sum, a minimum, a maximum, ...). So aggregate(a, b) combines the values of
+ * every key in [a, b] in O(log n) amortized, the same way SplayTree.rangeCount
+ * counts them.
+ *
+ * NOTE:
+ * Splaying is top-down as in SplayTree. The sizes there are fixed up by
+ * subtracting along the assembled spines, but a general monoid cannot be
+ * undone like that. Instead the nodes linked into the left and right trees are
+ * remembered and their aggregates recomputed from the bottom of each spine up
+ * once the splay is done.
+ */
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class AggregateSplayTree<E, V> {
+    // A single node of the tree
+    static class Node<E, V> {
+        Node<E, V> left;   // Left child
+        Node<E, V> right;  // Right child
+        int size;          // Number of keys in this node's subtree
+        E key;
+        V value;
+        V aggregate;       // Combination of all the values in this node's subtree
+
+        Node(E key, V value) {
+            this.key = key;
+            this.value = value;
+            aggregate = value;
+            size = 1;
+        }
+    }
+
+    final Monoid<V> monoid;
+    final Comparator<? super E> comparator;
+    Node<E, V> root;
+
+    // Scratch space for splay: the header of the left/right trees being assembled
+    // and the nodes linked into each of them (deepest last)
+    final Node<E, V> header = new Node<>(null, null);
+    @SuppressWarnings("unchecked")
+    Node<E, V>[] leftPath = (Node<E, V>[]) new Node<?, ?>[16];
+    @SuppressWarnings("unchecked")
+    Node<E, V>[] rightPath = (Node<E, V>[]) new Node<?, ?>[16];
+
+    // Create an empty tree ordered by the keys' natural ordering
+    public AggregateSplayTree(Monoid<V> monoid) {
+        this(monoid, SplayTree.NATURAL_ORDER);
+    }
+
+    // Create an empty tree ordered by the given comparator
+    public AggregateSplayTree(Monoid<V> monoid, Comparator<? super E> comparator) {
+        if (monoid == null) throw new NullPointerException("monoid");
+        if (comparator == null) throw new NullPointerException("comparator");
+        this.monoid = monoid;
+        this.comparator = comparator;
+    }
+
+    // Number of keys in the tree
+    public int size() {
+        return size(root);
+    }
+
+    // Associate value with key, replacing any value it already had
+    public void put(E key, V value) {
+        if (root == null) {
+            root = new Node<>(key, value);
+            return;
+        }
+        root = splay(root, key);
+        int comp = comparator.compare(root.key, key);
+        if (comp == 0) {
+            root.value = value;
+            update(root);
+            return;
+        }
+
+        // The new node becomes the root, splitting the tree at the old root
+        Node<E, V> node = new Node<>(key, value);
+        if (comp < 0) {
+            node.right = root.right;
+            root.right = null;
+            node.left = root;
+        } else {
+            node.left = root.left;
+            root.left = null;
+            node.right = root;
+        }
+        update(root);
+        update(node);
+        root = node;
+    }
+
+    // Returns the value of key (null if it is not in the tree)
+    public V get(E key) {
+        if (root == null) return null;
+        root = splay(root, key);
+        return comparator.compare(root.key, key) == 0 ? root.value : null;
+    }
+
+    // Delete key (and its value) from the tree
+    // Returns true if the key was found and deleted
+    public boolean delete(E key) {
+        if (root == null) return false;
+        root = splay(root, key);
+        if (comparator.compare(root.key, key) != 0) return false;
+        if (root.left == null) {
+            root = root.right;
+        } else {
+            // Splaying the left subtree for key brings its largest key up
+            Node<E, V> right = root.right;
+            root = splay(root.left, key);
+            root.right = right;
+            update(root);
+        }
+        return true;
+    }
+
+    // Returns how many keys are between a (inclusive) and b (inclusive)
+    // Assumes a <= b.
+    public int rangeCount(E a, E b) {
+        Node<E, V> right = splitRange(a, b);
+        if (right == null) return root != null && inRange(root, a, b) ? 1 : 0;
+        int count = size(right.left);
+        if (inRange(root, a, b)) count++;
+        if (comparator.compare(right.key, b) <= 0) count++;
+        return count;
+    }
+
+    // Returns the combination (in key order) of the values of every key between
+    // a (inclusive) and b (inclusive), or the monoid's identity if there are none
+    // Assumes a <= b.
+    public V aggregate(E a, E b) {
+        Node<E, V> right = splitRange(a, b);
+        V result = monoid.identity();
+        if (root != null && inRange(root, a, b)) result = root.value;
+        if (right != null) {
+            // Everything in right's left subtree lies strictly between the root and right
+            if (right.left != null) result = monoid.combine(result, right.left.aggregate);
+            if (comparator.compare(right.key, b) <= 0) result = monoid.combine(result, right.value);
+        }
+        return result;
+    }
+
+    // *************************************
+    // Helper functions
+    // *************************************
+    // Size of the (possibly empty) subtree at node
+    static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Recompute node's size and aggregate from its children
+    void update(Node<E, V> node) {
+        Node<E, V> left = node.left, right = node.right;
+        V aggregate = node.value;
+        int size = 1;
+        if (left != null) {
+            aggregate = monoid.combine(left.aggregate, aggregate);
+            size += left.size;
+        }
+        if (right != null) {
+            aggregate = monoid.combine(aggregate, right.aggregate);
+            size += right.size;
+        }
+        node.aggregate = aggregate;
+        node.size = size;
+    }
+
+    boolean inRange(Node<E, V> node, E a, E b) {
+        return comparator.compare(node.key, a) >= 0 && comparator.compare(node.key, b) <= 0;
+    }
+
+    // Splay a to the root and then b to the root of the right subtree, as in
+    // SplayTree.rangeCount. Returns the root of the right subtree (null if there
+    // is none or the whole range lies before it).
+    Node<E, V> splitRange(E a, E b) {
+        if (root == null) return null;
+        root = splay(root, a);
+        if (root.right == null || comparator.compare(root.key, b) > 0) return null;
+        root.right = splay(root.right, b);
+        return root.right;
+    }
+
+    // Top-down splay of the subtree at t for key e (see SplayTree.splay)
+    // Returns the new root of the subtree.
+    Node<E, V> splay(Node<E, V> t, E e) {
+        Node<E, V> l = header;  // Largest node of the left tree (all < e)
+        Node<E, V> r = header;  // Smallest node of the right tree (all > e)
+        int leftCount = 0;      // Nodes linked into the left tree
+        int rightCount = 0;     // Nodes linked into the right tree
+        header.left = header.right = null;
+
+        while (true) {
+            int comp = comparator.compare(t.key, e);
+            if (comp > 0) {
+                if (t.left == null) break;
+                if (comparator.compare(t.left.key, e) > 0) {
+                    // Zig-zig: rotate right first
+                    Node<E, V> y = t.left;
+                    t.left = y.right;
+                    y.right = t;
+                    update(t);
+                    t = y;
+                    if (t.left == null) break;
+                }
+                // Link t onto the right tree
+                if (rightCount == rightPath.length) rightPath = Arrays.copyOf(rightPath, rightCount * 2);
+                rightPath[rightCount++] = t;
+                r.left = t;
+                r = t;
+                t = t.left;
+            } else if (comp < 0) {
+                if (t.right == null) break;
+                if (comparator.compare(t.right.key, e) < 0) {
+                    // Zig-zig: rotate left first
+                    Node<E, V> y = t.right;
+                    t.right = y.left;
+                    y.left = t;
+                    update(t);
+                    t = y;
+                    if (t.right == null) break;
+                }
+                // Link t onto the left tree
+                if (leftCount == leftPath.length) leftPath = Arrays.copyOf(leftPath, leftCount * 2);
+                leftPath[leftCount++] = t;
+                l.right = t;
+                l = t;
+                t = t.right;
+            } else {
+                break;
+            }
+        }
+
+        // Hang t's subtrees on the ends of the left and right trees, then
+        // recompute both spines from the bottom up
+        l.right = t.left;
+        r.left = t.right;
+        for (int i = leftCount - 1; i >= 0; i--) {
+            update(leftPath[i]);
+            leftPath[i] = null;
+        }
+        for (int i = rightCount - 1; i >= 0; i--) {
+            update(rightPath[i]);
+            rightPath[i] = null;
+        }
+        t.left = header.right;
+        t.right = header.left;
+        update(t);
+        header.left = header.right = null;
+        return t;
+    }
+}
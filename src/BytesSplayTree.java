@@ -0,0 +1,383 @@
+/****************
+ * Bytes Splay Tree
+ * Spring 2024
+ *
+ * A splay tree of binary keys (byte arrays, or Strings as their UTF-8 bytes)
+ * ordered lexicographically by unsigned byte, with the same insert, delete and
+ * range count contract as SplayTree.
+ *
+ * NOTE:
+ * Nodes are indices into parallel arrays as in LongSplayTree, and the keys
+ * themselves are copied into one shared slab (a byte array) rather than kept
+ * as an object per node. Each node also caches the first PREFIX_BYTES bytes of
+ * its key as a big-endian long, zero padded; most comparisons are settled by
+ * comparing the two prefixes as unsigned longs without touching the slab.
+ * Only keys sharing their whole prefix fall back on Arrays.compareUnsigned,
+ * which the JIT vectorizes.
+ *
+ * The zero padding cannot give a wrong answer: if two prefixes differ, they
+ * first differ either at a real byte of both keys or where the shorter key has
+ * ended (padding 0 against a byte of the longer key, which must be nonzero
+ * for the prefixes to differ there), and the shorter key does come first.
+ *
+ * Deleted keys leave holes in the slab; once holes make up more than half of
+ * it, the live keys are copied into a new, packed slab.
+ *
+ * UTF-8 byte order is Unicode code point order. It differs from
+ * String.compareTo (UTF-16 order) only for code points above U+FFFF, which sort
+ * after U+E000..U+FFFF here.
+ */
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class BytesSplayTree {
+    static final int NIL = 0;                // The empty subtree (and splay's header)
+    static final int DEFAULT_CAPACITY = 16;  // Initial number of keys before growing
+    static final int PREFIX_BYTES = Long.BYTES;
+    static final int MIN_COMPACT_BYTES = 4096;  // Never compact a slab with fewer holes than this
+    static final int INITIAL_BYTES_PER_KEY = 16;  // Slab room reserved per key of the initial capacity
+    static final int MAX_SLAB_BYTES = Integer.MAX_VALUE - 8;  // Largest array most JVMs will allocate
+
+    long[] prefix;  // First PREFIX_BYTES bytes of each node's key
+    int[] offset;   // Where each node's key starts in the slab
+    int[] length;   // Length of each node's key
+    int[] left;     // Left child of each node
+    int[] right;    // Right child of each node
+    int[] size;     // Number of elements in each node's subtree
+
+    byte[] slab;    // The keys' bytes
+    int slabUsed;   // Bytes of the slab used so far (live keys and holes)
+    int slabHoles;  // Bytes of the slab belonging to deleted keys
+
+    int root;  // Root node (NIL if the tree is empty)
+    int next;  // Next slot that has never been used
+    int free;  // Head of the free list of deleted slots (NIL if none)
+
+    public BytesSplayTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // Create an empty tree with room for initialCapacity keys before the arrays grow
+    public BytesSplayTree(int initialCapacity) {
+        if (initialCapacity < 0) throw new IllegalArgumentException("Negative capacity: " + initialCapacity);
+        int slots = initialCapacity + 1;  // Slot 0 is NIL
+        prefix = new long[slots];
+        offset = new int[slots];
+        length = new int[slots];
+        left = new int[slots];
+        right = new int[slots];
+        size = new int[slots];
+        // Computed as a long so a large capacity cannot overflow, then clamped
+        long slabBytes = (long) initialCapacity * INITIAL_BYTES_PER_KEY;
+        slab = new byte[(int) Math.min(MAX_SLAB_BYTES, Math.max(INITIAL_BYTES_PER_KEY, slabBytes))];
+        root = NIL;
+        next = 1;
+        free = NIL;
+    }
+
+    // Number of keys in the tree
+    public int size() {
+        return size[root];
+    }
+
+    // Insert the given key into the tree (the tree keeps its own copy)
+    // This is a set so if the key is already present, then it will not be inserted.
+    public void insert(byte[] k) {
+        long kp = prefix(k);
+        if (root == NIL) {
+            root = newNode(k, kp);
+        } else {
+            root = splay(root, k, kp);
+            int comp = compare(root, k, kp);
+            if (comp != 0) {
+                // The new node becomes the root, splitting the tree at the old root
+                int n = newNode(k, kp);
+                size[n] = size[root] + 1;
+                if (comp < 0) {
+                    right[n] = right[root];
+                    right[root] = NIL;
+                    size[root] -= size[right[n]];
+                    left[n] = root;
+                } else {
+                    left[n] = left[root];
+                    left[root] = NIL;
+                    size[root] -= size[left[n]];
+                    right[n] = root;
+                }
+                root = n;
+            }
+        }
+    }
+
+    // Insert the UTF-8 bytes of the given string
+    public void insert(String k) {
+        insert(k.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Delete the key from the tree
+    // Returns true if the key was found and deleted
+    // Returns false if the key was not found in the tree
+    public boolean delete(byte[] k) {
+        if (root == NIL) return false;
+        long kp = prefix(k);
+        root = splay(root, k, kp);
+        if (compare(root, k, kp) != 0) return false;
+
+        int old = root;
+        if (left[old] == NIL) {
+            root = right[old];
+        } else {
+            // Splaying the left subtree for k brings its largest key up
+            int r = right[old];
+            root = splay(left[old], k, kp);
+            right[root] = r;
+            size[root] += size[r];
+        }
+        freeNode(old);
+        return true;
+    }
+
+    // Delete the UTF-8 bytes of the given string
+    public boolean delete(String k) {
+        return delete(k.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns true if the key is in the tree
+    public boolean contains(byte[] k) {
+        if (root == NIL) return false;
+        long kp = prefix(k);
+        root = splay(root, k, kp);
+        return compare(root, k, kp) == 0;
+    }
+
+    // Returns true if the UTF-8 bytes of the given string are in the tree
+    public boolean contains(String k) {
+        return contains(k.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns how many keys are between a (inclusive) and b (inclusive)
+    // Assumes a <= b.
+    public int rangeCount(byte[] a, byte[] b) {
+        if (root == NIL) return 0;
+
+        // Splay a to the root, then count the keys <= b in its right subtree
+        // by splaying b within that subtree only (see SplayTree.rangeCount)
+        long ap = prefix(a), bp = prefix(b);
+        root = splay(root, a, ap);
+        int count = 0;
+        if (compare(root, a, ap) >= 0) {
+            if (compare(root, b, bp) > 0) return 0;
+            count++;
+        }
+        int r = right[root];
+        if (r != NIL) {
+            r = splay(r, b, bp);
+            right[root] = r;
+            count += size[left[r]];
+            if (compare(r, b, bp) <= 0) count++;
+        }
+        return count;
+    }
+
+    // Returns how many keys are between the UTF-8 bytes of a (inclusive) and b (inclusive)
+    public int rangeCount(String a, String b) {
+        return rangeCount(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Display the tree to the provided output stream
+    // For debuggging, reports the tree with key (decoded as UTF-8) and size for each node
+    public void printTree(PrintStream out) {
+        printTree(out, root, "");
+    }
+
+    // *************************************
+    // Helper functions
+    // *************************************
+    void printTree(PrintStream out, int node, String indent) {
+        if (node == NIL) {
+            out.println(indent + "()");
+        } else {
+            String k = new String(slab, offset[node], length[node], StandardCharsets.UTF_8);
+            out.println(indent + "(" + k + " " + "Size: " + size[node]);
+            printTree(out, left[node], indent + "  ");
+            printTree(out, right[node], indent + "  ");
+            out.println(indent + ")");
+        }
+    }
+
+    // The first PREFIX_BYTES bytes of k as a big-endian long, zero padded
+    static long prefix(byte[] k) {
+        return prefix(k, 0, k.length);
+    }
+
+    static long prefix(byte[] a, int from, int length) {
+        long p = 0;
+        int n = Math.min(length, PREFIX_BYTES);
+        for (int i = 0; i < n; i++) p |= (a[from + i] & 0xFFL) << (56 - 8 * i);
+        return p;
+    }
+
+    // Compare node's key with k (whose prefix is kp): negative, zero or positive
+    // as the node's key is less than, equal to or greater than k
+    int compare(int node, byte[] k, long kp) {
+        int comp = Long.compareUnsigned(prefix[node], kp);
+        if (comp != 0) return comp;
+        // Same prefix, so the bytes both keys have within it are equal: compare
+        // whatever follows them (a key ending inside the prefix may still be the
+        // shorter of the two, as padding looks like zero bytes)
+        int from = offset[node];
+        int nodeLength = length[node];
+        int same = Math.min(Math.min(nodeLength, k.length), PREFIX_BYTES);
+        return Arrays.compareUnsigned(slab, from + same, from + nodeLength, k, same, k.length);
+    }
+
+    // Top-down splay of the subtree at t for key k (see SplayTree.splay)
+    // Returns the new root of the subtree.
+    int splay(int t, byte[] k, long kp) {
+        int[] left = this.left, right = this.right, size = this.size;
+        int l = NIL;  // Largest node of the left tree (all < k)
+        int r = NIL;  // Smallest node of the right tree (all > k)
+        int leftSize = 0;
+        int rightSize = 0;
+        left[NIL] = right[NIL] = NIL;
+
+        while (true) {
+            int comp = compare(t, k, kp);
+            if (comp > 0) {
+                int y = left[t];
+                if (y == NIL) break;
+                if (compare(y, k, kp) > 0) {
+                    // Zig-zig: rotate right first
+                    left[t] = right[y];
+                    right[y] = t;
+                    size[t] = size[left[t]] + size[right[t]] + 1;
+                    t = y;
+                    if (left[t] == NIL) break;
+                }
+                // Link t onto the right tree
+                left[r] = t;
+                r = t;
+                t = left[t];
+                rightSize += size[right[r]] + 1;
+            } else if (comp < 0) {
+                int y = right[t];
+                if (y == NIL) break;
+                if (compare(y, k, kp) < 0) {
+                    // Zig-zig: rotate left first
+                    right[t] = left[y];
+                    left[y] = t;
+                    size[t] = size[left[t]] + size[right[t]] + 1;
+                    t = y;
+                    if (right[t] == NIL) break;
+                }
+                // Link t onto the left tree
+                right[l] = t;
+                l = t;
+                t = right[t];
+                leftSize += size[left[l]] + 1;
+            } else {
+                break;
+            }
+        }
+
+        leftSize += size[left[t]];
+        rightSize += size[right[t]];
+        size[t] = leftSize + rightSize + 1;
+
+        // Fix the sizes along the spines of the assembled left and right trees
+        right[l] = NIL;
+        left[r] = NIL;
+        for (int y = right[NIL]; y != NIL; y = right[y]) {
+            size[y] = leftSize;
+            leftSize -= size[left[y]] + 1;
+        }
+        for (int y = left[NIL]; y != NIL; y = left[y]) {
+            size[y] = rightSize;
+            rightSize -= size[right[y]] + 1;
+        }
+
+        // Reassemble around t
+        right[l] = left[t];
+        left[r] = right[t];
+        left[t] = right[NIL];
+        right[t] = left[NIL];
+        left[NIL] = right[NIL] = NIL;
+        return t;
+    }
+
+    // Take a slot for a new leaf holding a copy of k (reusing a deleted slot if possible)
+    int newNode(byte[] k, long kp) {
+        int n;
+        if (free != NIL) {
+            n = free;
+            free = left[n];
+        } else {
+            if (next == size.length) grow();
+            n = next++;
+        }
+        if (slab.length - slabUsed < k.length) growSlab(k.length);
+        System.arraycopy(k, 0, slab, slabUsed, k.length);
+        prefix[n] = kp;
+        offset[n] = slabUsed;
+        length[n] = k.length;
+        slabUsed += k.length;
+        left[n] = right[n] = NIL;
+        size[n] = 1;
+        return n;
+    }
+
+    // Return a deleted node's slot to the free list (its key becomes a hole in the slab)
+    void freeNode(int n) {
+        left[n] = free;
+        right[n] = NIL;
+        free = n;
+        slabHoles += length[n];
+        length[n] = 0;
+        if (slabHoles > MIN_COMPACT_BYTES && slabHoles > slabUsed / 2) compact();
+    }
+
+    // Copy the live keys into a new slab without holes (in key order)
+    void compact() {
+        byte[] packed = new byte[Math.max(16, (slabUsed - slabHoles) * 2)];
+        int used = 0;
+        int[] stack = new int[16];
+        int top = 0;
+        int curr = root;
+        while (curr != NIL || top > 0) {
+            while (curr != NIL) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = curr;
+                curr = left[curr];
+            }
+            curr = stack[--top];
+            System.arraycopy(slab, offset[curr], packed, used, length[curr]);
+            offset[curr] = used;
+            used += length[curr];
+            curr = right[curr];
+        }
+        slab = packed;
+        slabUsed = used;
+        slabHoles = 0;
+    }
+
+    // Grow the slab by about half, or enough for another needed bytes
+    void growSlab(int needed) {
+        long newLength = Math.max(slab.length + (slab.length >> 1) + 1L, (long) slabUsed + needed);
+        if (newLength > MAX_SLAB_BYTES) throw new IllegalStateException("Key slab is full");
+        slab = Arrays.copyOf(slab, (int) newLength);
+    }
+
+    // Grow the node arrays by about half
+    void grow() {
+        int length = size.length;
+        if (length == Integer.MAX_VALUE) throw new IllegalStateException("Tree is full");
+        int newLength = (int) Math.min(Integer.MAX_VALUE, length + (length >> 1) + 1L);
+        prefix = Arrays.copyOf(prefix, newLength);
+        offset = Arrays.copyOf(offset, newLength);
+        this.length = Arrays.copyOf(this.length, newLength);
+        left = Arrays.copyOf(left, newLength);
+        right = Arrays.copyOf(right, newLength);
+        size = Arrays.copyOf(size, newLength);
+    }
+}
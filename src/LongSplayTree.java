@@ -0,0 +1,454 @@
+/****************
+ * Long Splay Tree
+ * Spring 2024
+ *
+ * A splay tree of primitive long keys with the same insert, delete and range
+ * count contract as SplayTree<Long>, but without boxing the keys or
+ * allocating an object per element.
+ *
+ * NOTE:
+ * Nodes are indices into parallel arrays (key, left, right, size) which grow
+ * as needed. Index 0 is NIL: its size is always 0 so subtree sizes can be read
+ * without a null check, and splay borrows its child links as the header of the
+ * left and right trees it assembles. Slots of deleted nodes are kept on a free
+ * list (chained through left) and reused by later inserts.
+ *
+ * Splaying is top-down, exactly as in SplayTree.
+ *
+ * A tree can be saved to a snapshot file and loaded back. The file holds a
+ * header (SNAPSHOT_MAGIC, SNAPSHOT_VERSION, the key width in bytes and the
+ * number of keys, each a big-endian int) followed by the keys in order.
+ * Loading memory-maps the file and builds a balanced tree in O(n).
+ */
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class LongSplayTree {
+    static final int NIL = 0;                // The empty subtree (and splay's header)
+    static final int DEFAULT_CAPACITY = 16;  // Initial number of keys before growing
+    static final int SNAPSHOT_MAGIC = 0x53504C59;  // "SPLY"
+    static final int SNAPSHOT_VERSION = 1;
+    static final int SNAPSHOT_HEADER_BYTES = 16;
+    static final int SNAPSHOT_WINDOW_BYTES = 1 << 30;  // Bytes of keys mapped at a time when loading
+
+    long[] key;   // Key stored at each node
+    int[] left;   // Left child of each node
+    int[] right;  // Right child of each node
+    int[] size;   // Number of elements in each node's subtree
+
+    int root;  // Root node (NIL if the tree is empty)
+    int next;  // Next slot that has never been used
+    int free;  // Head of the free list of deleted slots (NIL if none)
+
+    public LongSplayTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // Create an empty tree with room for initialCapacity keys before the arrays grow
+    public LongSplayTree(int initialCapacity) {
+        if (initialCapacity < 0) throw new IllegalArgumentException("Negative capacity: " + initialCapacity);
+        int length = initialCapacity + 1;  // Slot 0 is NIL
+        key = new long[length];
+        left = new int[length];
+        right = new int[length];
+        size = new int[length];
+        root = NIL;
+        next = 1;
+        free = NIL;
+    }
+
+    // Replace the contents of the tree with the given strictly increasing keys
+    // Builds a perfectly balanced tree in O(n) without any splaying.
+    public void buildFromSorted(long[] sorted) {
+        int n = sorted.length;
+        for (int i = 1; i < n; i++) {
+            if (sorted[i - 1] >= sorted[i]) throw new IllegalArgumentException("Keys are not strictly increasing at " + i);
+        }
+        // Node i + 1 holds the i-th smallest key
+        key = new long[n + 1];
+        System.arraycopy(sorted, 0, key, 1, n);
+        left = new int[n + 1];
+        right = new int[n + 1];
+        size = new int[n + 1];
+        next = n + 1;
+        free = NIL;
+        root = build(1, n + 1);
+    }
+
+    // Write the tree's keys to a snapshot file (replacing any existing file)
+    // The tree is not splayed.
+    public void writeSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(Long.BYTES).putInt(size());
+
+            // In-order walk with an explicit stack
+            int[] stack = new int[16];
+            int top = 0;
+            int curr = root;
+            while (curr != NIL || top > 0) {
+                while (curr != NIL) {
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = curr;
+                    curr = left[curr];
+                }
+                curr = stack[--top];
+                if (buffer.remaining() < Long.BYTES) writeFully(channel, buffer);
+                buffer.putLong(key[curr]);
+                curr = right[curr];
+            }
+            writeFully(channel, buffer);
+        }
+    }
+
+    // Load a tree from a snapshot file written by writeSnapshot
+    public static LongSplayTree loadSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < SNAPSHOT_HEADER_BYTES) throw new IOException(file + " is not a splay tree snapshot");
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SNAPSHOT_HEADER_BYTES);
+            if (header.getInt(0) != SNAPSHOT_MAGIC) throw new IOException(file + " is not a splay tree snapshot");
+            if (header.getInt(4) != SNAPSHOT_VERSION || header.getInt(8) != Long.BYTES) {
+                throw new IOException(file + " has snapshot version " + header.getInt(4) + " with "
+                    + header.getInt(8) + " byte keys, expected version " + SNAPSHOT_VERSION + " with " + Long.BYTES);
+            }
+            int n = header.getInt(12);
+            if (n < 0 || channel.size() != SNAPSHOT_HEADER_BYTES + (long) n * Long.BYTES) {
+                throw new IOException(file + " is truncated or has trailing data");
+            }
+
+            // A single mapping is limited to 2GB, so map the keys a window at a time,
+            // reading them straight into their nodes (node i + 1 holds the i-th smallest key)
+            LongSplayTree tree = new LongSplayTree(n);
+            long offset = SNAPSHOT_HEADER_BYTES;
+            for (int filled = 0; filled < n; ) {
+                int count = Math.min(n - filled, SNAPSHOT_WINDOW_BYTES / Long.BYTES);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) count * Long.BYTES);
+                window.asLongBuffer().get(tree.key, 1 + filled, count);
+                filled += count;
+                offset += (long) count * Long.BYTES;
+            }
+            for (int i = 2; i <= n; i++) {
+                if (tree.key[i - 1] >= tree.key[i]) throw new IOException(file + " has keys out of order at " + (i - 1));
+            }
+            tree.next = n + 1;
+            tree.root = tree.build(1, n + 1);
+            return tree;
+        }
+    }
+
+    // Number of keys in the tree
+    public int size() {
+        return size[root];
+    }
+
+    // Insert the given key into the tree
+    // This is a set so if the key is already present, then it will not be inserted.
+    public void insert(long k) {
+        if (root == NIL) {
+            root = newNode(k);
+        } else {
+            root = splay(root, k);
+            long rootKey = key[root];
+            if (rootKey != k) {
+                // The new node becomes the root, splitting the tree at the old root
+                int n = newNode(k);
+                size[n] = size[root] + 1;
+                if (rootKey < k) {
+                    right[n] = right[root];
+                    right[root] = NIL;
+                    size[root] -= size[right[n]];
+                    left[n] = root;
+                } else {
+                    left[n] = left[root];
+                    left[root] = NIL;
+                    size[root] -= size[left[n]];
+                    right[n] = root;
+                }
+                root = n;
+            }
+        }
+    }
+
+    // Delete the key from the tree
+    // Returns true if the key was found and deleted
+    // Returns false if the key was not found in the tree
+    public boolean delete(long k) {
+        if (root == NIL) return false;
+        root = splay(root, k);
+        if (key[root] != k) return false;
+
+        int old = root;
+        if (left[old] == NIL) {
+            root = right[old];
+        } else {
+            // Splaying the left subtree for k brings its largest key up
+            int r = right[old];
+            root = splay(left[old], k);
+            right[root] = r;
+            size[root] += size[r];
+        }
+        freeNode(old);
+        return true;
+    }
+
+    // Returns how many keys are between a (inclusive) and b (inclusive)
+    // Assumes a <= b.
+    public int rangeCount(long a, long b) {
+        if (root == NIL) return 0;
+
+        // Splay a to the root, then count the keys <= b in its right subtree
+        // by splaying b within that subtree only (see SplayTree.rangeCount)
+        root = splay(root, a);
+        int count = 0;
+        if (key[root] >= a) {
+            if (key[root] > b) return 0;
+            count++;
+        }
+        int r = right[root];
+        if (r != NIL) {
+            r = splay(r, b);
+            right[root] = r;
+            count += size[left[r]];
+            if (key[r] <= b) count++;
+        }
+        return count;
+    }
+
+    // Returns the rangeCount of every range [lows[i], highs[i]] (0 if lows[i] > highs[i])
+    // All the endpoints are counted in a single ordered sweep through the tree
+    // without splaying (see SplayTree.rangeCountAll).
+    public int[] rangeCountAll(long[] lows, long[] highs) {
+        int m = lows.length;
+        if (highs.length != m) throw new IllegalArgumentException("Got " + m + " lows but " + highs.length + " highs");
+
+        // For each distinct endpoint (in order): the keys < it and whether it is present
+        long[] ends = new long[2 * m];
+        System.arraycopy(lows, 0, ends, 0, m);
+        System.arraycopy(highs, 0, ends, m, m);
+        Arrays.sort(ends);
+        int[] lessThan = new int[2 * m];
+        boolean[] present = new boolean[2 * m];
+
+        int[] stack = new int[16];  // Unpassed nodes, smallest on top
+        int top = 0;
+        int passed = 0;
+        int curr = root;
+        for (int i = 0; i < ends.length; i++) {
+            long x = ends[i];
+            while (true) {
+                if (curr != NIL) {
+                    if (key[curr] < x) {
+                        passed += size[left[curr]] + 1;
+                        curr = right[curr];
+                    } else {
+                        if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                        stack[top++] = curr;
+                        curr = left[curr];
+                    }
+                } else if (top > 0 && key[stack[top - 1]] < x) {
+                    passed++;
+                    curr = right[stack[--top]];
+                } else {
+                    break;
+                }
+            }
+            lessThan[i] = passed;
+            present[i] = top > 0 && key[stack[top - 1]] == x;
+        }
+
+        int[] counts = new int[m];
+        for (int j = 0; j < m; j++) {
+            int low = Arrays.binarySearch(ends, lows[j]);
+            int high = Arrays.binarySearch(ends, highs[j]);
+            int count = lessThan[high] + (present[high] ? 1 : 0) - lessThan[low];
+            counts[j] = Math.max(0, count);
+        }
+        return counts;
+    }
+
+    // Display the tree to the provided output stream
+    // For debuggging, reports the tree with key and size for each node
+    public void printTree(PrintStream out) {
+        printTree(out, root, "");
+    }
+
+    // *************************************
+    // Helper functions
+    // *************************************
+    void printTree(PrintStream out, int node, String indent) {
+        if (node == NIL) {
+            out.println(indent + "()");
+        } else {
+            out.println(indent + "(" + key[node] + " " + "Size: " + size[node]);
+            printTree(out, left[node], indent + "  ");
+            printTree(out, right[node], indent + "  ");
+            out.println(indent + ")");
+        }
+    }
+
+    // Return how many keys in tree are less than (or equal to) k
+    // If inclusive: less than or equal to
+    // Otherwise: strictly less than
+    // If splay is true, then the last node visited is splayed to the top
+    int countLessThan(long k, boolean inclusive, boolean splay) {
+        if (root == NIL) return 0;
+
+        if (splay) {
+            root = splay(root, k);
+            long rootKey = key[root];
+            int count = size[left[root]];
+            if (rootKey < k || (rootKey == k && inclusive)) count++;
+            return count;
+        }
+
+        int curr = root;
+        int count = 0;
+        while (curr != NIL) {
+            long currKey = key[curr];
+            if (currKey == k) {
+                count += size[left[curr]];
+                if (inclusive) count++;
+                break;
+            } else if (currKey < k) {
+                count += size[left[curr]] + 1;
+                curr = right[curr];
+            } else {
+                curr = left[curr];
+            }
+        }
+        return count;
+    }
+
+    // Top-down splay of the subtree at t for key k (see SplayTree.splay)
+    // Returns the new root of the subtree.
+    int splay(int t, long k) {
+        long[] key = this.key;
+        int[] left = this.left, right = this.right, size = this.size;
+        int l = NIL;  // Largest node of the left tree (all < k)
+        int r = NIL;  // Smallest node of the right tree (all > k)
+        int leftSize = 0;
+        int rightSize = 0;
+        left[NIL] = right[NIL] = NIL;
+
+        while (true) {
+            if (k < key[t]) {
+                int y = left[t];
+                if (y == NIL) break;
+                if (k < key[y]) {
+                    // Zig-zig: rotate right first
+                    left[t] = right[y];
+                    right[y] = t;
+                    size[t] = size[left[t]] + size[right[t]] + 1;
+                    t = y;
+                    if (left[t] == NIL) break;
+                }
+                // Link t onto the right tree
+                left[r] = t;
+                r = t;
+                t = left[t];
+                rightSize += size[right[r]] + 1;
+            } else if (k > key[t]) {
+                int y = right[t];
+                if (y == NIL) break;
+                if (k > key[y]) {
+                    // Zig-zig: rotate left first
+                    right[t] = left[y];
+                    left[y] = t;
+                    size[t] = size[left[t]] + size[right[t]] + 1;
+                    t = y;
+                    if (right[t] == NIL) break;
+                }
+                // Link t onto the left tree
+                right[l] = t;
+                l = t;
+                t = right[t];
+                leftSize += size[left[l]] + 1;
+            } else {
+                break;
+            }
+        }
+
+        leftSize += size[left[t]];
+        rightSize += size[right[t]];
+        size[t] = leftSize + rightSize + 1;
+
+        // Fix the sizes along the spines of the assembled left and right trees
+        right[l] = NIL;
+        left[r] = NIL;
+        for (int y = right[NIL]; y != NIL; y = right[y]) {
+            size[y] = leftSize;
+            leftSize -= size[left[y]] + 1;
+        }
+        for (int y = left[NIL]; y != NIL; y = left[y]) {
+            size[y] = rightSize;
+            rightSize -= size[right[y]] + 1;
+        }
+
+        // Reassemble around t
+        right[l] = left[t];
+        left[r] = right[t];
+        left[t] = right[NIL];
+        right[t] = left[NIL];
+        left[NIL] = right[NIL] = NIL;
+        return t;
+    }
+
+    // Link the nodes from..to-1 (already holding sorted keys) into a perfectly
+    // balanced subtree. Returns its root (NIL if the range is empty).
+    int build(int from, int to) {
+        if (from >= to) return NIL;
+        int mid = (from + to) >>> 1;
+        left[mid] = build(from, mid);
+        right[mid] = build(mid + 1, to);
+        size[mid] = to - from;
+        return mid;
+    }
+
+    // Write out and clear the buffer
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    // Take a slot for a new leaf holding k (reusing a deleted slot if possible)
+    int newNode(long k) {
+        int n;
+        if (free != NIL) {
+            n = free;
+            free = left[n];
+        } else {
+            if (next == key.length) grow();
+            n = next++;
+        }
+        key[n] = k;
+        left[n] = right[n] = NIL;
+        size[n] = 1;
+        return n;
+    }
+
+    // Return a deleted node's slot to the free list
+    void freeNode(int n) {
+        left[n] = free;
+        right[n] = NIL;
+        free = n;
+    }
+
+    // Grow the node arrays by about half
+    void grow() {
+        int length = key.length;
+        if (length == Integer.MAX_VALUE) throw new IllegalStateException("Tree is full");
+        int newLength = (int) Math.min(Integer.MAX_VALUE, length + (length >> 1) + 1L);
+        key = Arrays.copyOf(key, newLength);
+        left = Arrays.copyOf(left, newLength);
+        right = Arrays.copyOf(right, newLength);
+        size = Arrays.copyOf(size, newLength);
+    }
+}
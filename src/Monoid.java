@@ -0,0 +1,52 @@
+/****************
+ * Monoid
+ * Spring 2024
+ *
+ * An associative way of combining values with an identity, used by
+ * AggregateSplayTree to keep a summary (sum, min, max, ...) of every subtree.
+ * combine must be associative but need not be commutative: the tree always
+ * combines values in key order.
+ */
+import java.util.Comparator;
+import java.util.function.BinaryOperator;
+
+public interface Monoid<V> {
+    // The value combining with anything to give that thing back
+    V identity();
+
+    // Combine two values (a comes before b in key order)
+    V combine(V a, V b);
+
+    // A monoid from an identity and an associative operation
+    static <V> Monoid<V> of(V identity, BinaryOperator<V> combine) {
+        return new Monoid<V>() {
+            public V identity() {
+                return identity;
+            }
+
+            public V combine(V a, V b) {
+                return combine.apply(a, b);
+            }
+        };
+    }
+
+    // Sum of long values
+    static Monoid<Long> longSum() {
+        return of(0L, Long::sum);
+    }
+
+    // Sum of double values
+    static Monoid<Double> doubleSum() {
+        return of(0.0, Double::sum);
+    }
+
+    // Smallest value by the given ordering (null when there are no values)
+    static <V> Monoid<V> min(Comparator<? super V> comparator) {
+        return of(null, (a, b) -> a == null ? b : b == null ? a : comparator.compare(a, b) <= 0 ? a : b);
+    }
+
+    // Largest value by the given ordering (null when there are no values)
+    static <V> Monoid<V> max(Comparator<? super V> comparator) {
+        return of(null, (a, b) -> a == null ? b : b == null ? a : comparator.compare(a, b) >= 0 ? a : b);
+    }
+}
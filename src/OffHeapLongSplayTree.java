@@ -0,0 +1,293 @@
+/****************
+ * Off-Heap Long Splay Tree
+ * Spring 2024
+ *
+ * A splay tree of long keys, like LongSplayTree, whose nodes live outside the
+ * Java heap in direct ByteBuffers. The heap only holds the array of buffers,
+ * so heap use and GC time stay flat however many keys the tree holds.
+ *
+ * NOTE:
+ * Each node is a fixed-width record of NODE_BYTES bytes:
+ *      key (long) | left (int) | right (int) | size (int) | padding (int)
+ * and is named by its index, which is what the links hold. The padding keeps
+ * every key 8-byte aligned (records of 20 bytes would save a sixth of the
+ * memory, but leave half the keys straddling a word). Nodes are stored in
+ * chunks of 2^chunkShift records (one direct buffer each) so the tree can grow
+ * past the 2GB limit of a single buffer; new chunks are added as needed.
+ *
+ * As in LongSplayTree, node 0 is NIL (size 0, and splay's header) and deleted
+ * nodes are kept on a free list for reuse. The native memory is released when
+ * the tree is garbage collected.
+ *
+ * Direct buffers count against the JVM's limit on direct memory, which is
+ * -XX:MaxDirectMemorySize and defaults to the maximum heap size (-Xmx). A tree
+ * bigger than the heap needs that flag raised, e.g.
+ *      java -Xmx1g -XX:MaxDirectMemorySize=16g ...
+ * or adding a chunk fails with OutOfMemoryError ("Direct buffer memory").
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class OffHeapLongSplayTree {
+    static final int NIL = 0;
+    static final int NODE_BYTES = 24;  // Size of one node record (the last 4 bytes are padding)
+    static final int KEY = 0;          // Offsets of the fields within a record
+    static final int LEFT = 8;
+    static final int RIGHT = 12;
+    static final int SIZE = 16;
+    static final int DEFAULT_CHUNK_SHIFT = 20;  // 2^20 nodes (24MB) per chunk
+
+    final int chunkShift;
+    final int chunkMask;
+    ByteBuffer[] chunks = new ByteBuffer[0];
+
+    int root;  // Root node (NIL if the tree is empty)
+    int next;  // Next node that has never been used
+    int free;  // Head of the free list of deleted nodes (NIL if none)
+
+    public OffHeapLongSplayTree() {
+        this(DEFAULT_CHUNK_SHIFT);
+    }
+
+    // Create an empty tree storing 2^chunkShift nodes per direct buffer
+    OffHeapLongSplayTree(int chunkShift) {
+        if (chunkShift < 1 || (long) NODE_BYTES << chunkShift > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad chunk shift: " + chunkShift);
+        }
+        this.chunkShift = chunkShift;
+        chunkMask = (1 << chunkShift) - 1;
+        addChunk();
+        root = NIL;
+        next = 1;  // Node 0 is NIL
+        free = NIL;
+    }
+
+    // Number of keys in the tree
+    public int size() {
+        return size(root);
+    }
+
+    // Insert the given key into the tree
+    // This is a set so if the key is already present, then it will not be inserted.
+    public void insert(long k) {
+        if (root == NIL) {
+            root = newNode(k);
+        } else {
+            root = splay(root, k);
+            long rootKey = key(root);
+            if (rootKey != k) {
+                // The new node becomes the root, splitting the tree at the old root
+                int n = newNode(k);
+                setSize(n, size(root) + 1);
+                if (rootKey < k) {
+                    int r = right(root);
+                    setRight(n, r);
+                    setRight(root, NIL);
+                    setSize(root, size(root) - size(r));
+                    setLeft(n, root);
+                } else {
+                    int l = left(root);
+                    setLeft(n, l);
+                    setLeft(root, NIL);
+                    setSize(root, size(root) - size(l));
+                    setRight(n, root);
+                }
+                root = n;
+            }
+        }
+    }
+
+    // Delete the key from the tree
+    // Returns true if the key was found and deleted
+    public boolean delete(long k) {
+        if (root == NIL) return false;
+        root = splay(root, k);
+        if (key(root) != k) return false;
+
+        int old = root;
+        if (left(old) == NIL) {
+            root = right(old);
+        } else {
+            // Splaying the left subtree for k brings its largest key up
+            int r = right(old);
+            root = splay(left(old), k);
+            setRight(root, r);
+            setSize(root, size(root) + size(r));
+        }
+        setLeft(old, free);
+        free = old;
+        return true;
+    }
+
+    // Returns true if the key is in the tree
+    public boolean contains(long k) {
+        if (root == NIL) return false;
+        root = splay(root, k);
+        return key(root) == k;
+    }
+
+    // Returns how many keys are between a (inclusive) and b (inclusive)
+    // Assumes a <= b.
+    public int rangeCount(long a, long b) {
+        if (root == NIL) return 0;
+
+        // Splay a to the root, then count the keys <= b in its right subtree
+        // by splaying b within that subtree only (see SplayTree.rangeCount)
+        root = splay(root, a);
+        int count = 0;
+        if (key(root) >= a) {
+            if (key(root) > b) return 0;
+            count++;
+        }
+        int r = right(root);
+        if (r != NIL) {
+            r = splay(r, b);
+            setRight(root, r);
+            count += size(left(r));
+            if (key(r) <= b) count++;
+        }
+        return count;
+    }
+
+    // Bytes of native memory currently reserved for nodes
+    public long offHeapBytes() {
+        return (long) chunks.length * (NODE_BYTES << chunkShift);
+    }
+
+    // *************************************
+    // Helper functions
+    // *************************************
+    // Field accessors: chunk n >>> chunkShift, record n & chunkMask within it
+    long key(int n) {
+        return chunks[n >>> chunkShift].getLong((n & chunkMask) * NODE_BYTES + KEY);
+    }
+
+    int left(int n) {
+        return chunks[n >>> chunkShift].getInt((n & chunkMask) * NODE_BYTES + LEFT);
+    }
+
+    int right(int n) {
+        return chunks[n >>> chunkShift].getInt((n & chunkMask) * NODE_BYTES + RIGHT);
+    }
+
+    int size(int n) {
+        return chunks[n >>> chunkShift].getInt((n & chunkMask) * NODE_BYTES + SIZE);
+    }
+
+    void setKey(int n, long k) {
+        chunks[n >>> chunkShift].putLong((n & chunkMask) * NODE_BYTES + KEY, k);
+    }
+
+    void setLeft(int n, int child) {
+        chunks[n >>> chunkShift].putInt((n & chunkMask) * NODE_BYTES + LEFT, child);
+    }
+
+    void setRight(int n, int child) {
+        chunks[n >>> chunkShift].putInt((n & chunkMask) * NODE_BYTES + RIGHT, child);
+    }
+
+    void setSize(int n, int size) {
+        chunks[n >>> chunkShift].putInt((n & chunkMask) * NODE_BYTES + SIZE, size);
+    }
+
+    // Top-down splay of the subtree at t for key k (see SplayTree.splay)
+    // Returns the new root of the subtree.
+    int splay(int t, long k) {
+        int l = NIL;  // Largest node of the left tree (all < k)
+        int r = NIL;  // Smallest node of the right tree (all > k)
+        int leftSize = 0;
+        int rightSize = 0;
+        setLeft(NIL, NIL);
+        setRight(NIL, NIL);
+
+        while (true) {
+            long tKey = key(t);
+            if (k < tKey) {
+                int y = left(t);
+                if (y == NIL) break;
+                if (k < key(y)) {
+                    // Zig-zig: rotate right first
+                    setLeft(t, right(y));
+                    setRight(y, t);
+                    setSize(t, size(left(t)) + size(right(t)) + 1);
+                    t = y;
+                    if (left(t) == NIL) break;
+                }
+                // Link t onto the right tree
+                setLeft(r, t);
+                r = t;
+                t = left(t);
+                rightSize += size(right(r)) + 1;
+            } else if (k > tKey) {
+                int y = right(t);
+                if (y == NIL) break;
+                if (k > key(y)) {
+                    // Zig-zig: rotate left first
+                    setRight(t, left(y));
+                    setLeft(y, t);
+                    setSize(t, size(left(t)) + size(right(t)) + 1);
+                    t = y;
+                    if (right(t) == NIL) break;
+                }
+                // Link t onto the left tree
+                setRight(l, t);
+                l = t;
+                t = right(t);
+                leftSize += size(left(l)) + 1;
+            } else {
+                break;
+            }
+        }
+
+        leftSize += size(left(t));
+        rightSize += size(right(t));
+        setSize(t, leftSize + rightSize + 1);
+
+        // Fix the sizes along the spines of the assembled left and right trees
+        setRight(l, NIL);
+        setLeft(r, NIL);
+        for (int y = right(NIL); y != NIL; y = right(y)) {
+            setSize(y, leftSize);
+            leftSize -= size(left(y)) + 1;
+        }
+        for (int y = left(NIL); y != NIL; y = left(y)) {
+            setSize(y, rightSize);
+            rightSize -= size(right(y)) + 1;
+        }
+
+        // Reassemble around t
+        setRight(l, left(t));
+        setLeft(r, right(t));
+        setLeft(t, right(NIL));
+        setRight(t, left(NIL));
+        setLeft(NIL, NIL);
+        setRight(NIL, NIL);
+        return t;
+    }
+
+    // Take a node for a new leaf holding k (reusing a deleted node if possible)
+    int newNode(long k) {
+        int n;
+        if (free != NIL) {
+            n = free;
+            free = left(n);
+        } else {
+            if (next == Integer.MAX_VALUE) throw new IllegalStateException("Tree is full");
+            if ((next >>> chunkShift) == chunks.length) addChunk();
+            n = next++;
+        }
+        setKey(n, k);
+        setLeft(n, NIL);
+        setRight(n, NIL);
+        setSize(n, 1);
+        return n;
+    }
+
+    // Allocate another chunk of native memory for nodes
+    void addChunk() {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(NODE_BYTES << chunkShift).order(ByteOrder.nativeOrder());
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        chunks[chunks.length - 1] = chunk;
+    }
+}
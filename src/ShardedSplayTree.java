@@ -0,0 +1,255 @@
+/****************
+ * Sharded Splay Tree
+ * Spring 2024
+ *
+ * A thread-safe front end over several SplayTrees, each holding one key range
+ * of the set and guarded by its own lock. Since even reads splay, a SplayTree
+ * can only be used by one thread at a time; splitting the key space lets
+ * operations on different ranges run on different cores.
+ *
+ * NOTE:
+ * The shards and the boundaries between them form an immutable layout which is
+ * swapped out as a whole when the tree rebalances. An operation picks its shard
+ * from the current layout and locks it; if that shard was retired by a
+ * rebalance in the meantime it simply retries with the new layout. So there is
+ * no lock shared by every operation.
+ *
+ * Each shard caches its size, so rangeCount only locks the (at most two) shards
+ * holding the ends of the range and adds in the cached totals of the shards in
+ * between. When several shards are involved the count is not an atomic snapshot:
+ * concurrent updates to the middle shards may or may not be included.
+ *
+ * A shard that grows well beyond its share of the elements, or shrinks well
+ * below it, triggers a rebalance, which locks every shard and rebuilds them
+ * with equal sizes in O(n). Either takes a number of inserts or deletes in
+ * proportion to the share first, so the cost is amortized over them. Trees
+ * whose shards hold fewer than MIN_REBALANCE_SIZE elements are never
+ * rebalanced for shrinking.
+ */
+import java.util.Comparator;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ShardedSplayTree<E> {
+    static final int MIN_REBALANCE_SIZE = 4096;  // Never rebalance because of a shard smaller than this
+    static final int SHRINK_FACTOR = 4;          // Rebalance once a shard drops below 1/4 of its share
+
+    // One key range of the tree and the lock guarding it
+    static class Shard<E> {
+        final ReentrantLock lock = new ReentrantLock();
+        final SplayTree<E> tree;
+        volatile int size;         // Cached tree.size() (only written under lock)
+        volatile boolean retired;  // Set once a rebalance has replaced this shard
+
+        Shard(SplayTree<E> tree) {
+            this.tree = tree;
+            size = tree.size();
+        }
+    }
+
+    // The shards and the boundaries between them
+    // Shard i holds the elements e with bounds[i-1] <= e < bounds[i].
+    static class Layout<E> {
+        final Object[] bounds;    // Smallest element of shards 1..n-1 (length n-1)
+        final Shard<E>[] shards;
+        final int rebalanceSize;  // A shard growing past this triggers a rebalance
+        final int shrinkSize;     // A shard shrinking below this triggers a rebalance
+
+        Layout(Object[] bounds, Shard<E>[] shards, int rebalanceSize, int shrinkSize) {
+            this.bounds = bounds;
+            this.shards = shards;
+            this.rebalanceSize = rebalanceSize;
+            this.shrinkSize = shrinkSize;
+        }
+    }
+
+    final Comparator<? super E> comparator;
+    final int numShards;  // Number of shards to aim for when rebalancing
+    final ReentrantLock rebalanceLock = new ReentrantLock();
+    volatile Layout<E> layout;
+
+    // Create an empty tree ordered by the elements' natural ordering which
+    // spreads its elements over (up to) numShards shards
+    public ShardedSplayTree(int numShards) {
+        this(numShards, SplayTree.NATURAL_ORDER);
+    }
+
+    // Create an empty tree ordered by the given comparator which spreads its
+    // elements over (up to) numShards shards
+    public ShardedSplayTree(int numShards, Comparator<? super E> comparator) {
+        if (numShards < 1) throw new IllegalArgumentException("Need at least one shard: " + numShards);
+        if (comparator == null) throw new NullPointerException("comparator");
+        this.comparator = comparator;
+        this.numShards = numShards;
+        // Start out with a single shard until there is something to divide up
+        layout = new Layout<>(new Object[0], newShards(new SplayTree<>(comparator)), MIN_REBALANCE_SIZE, 0);
+    }
+
+    // Insert the given element (does nothing if it is already present)
+    public void insert(E element) {
+        while (true) {
+            Layout<E> current = layout;
+            Shard<E> shard = current.shards[shardIndex(current, element)];
+            int size;
+            shard.lock.lock();
+            try {
+                if (shard.retired) continue;  // A rebalance got there first, try again
+                shard.tree.insert(element);
+                size = shard.tree.size();
+                shard.size = size;
+            } finally {
+                shard.lock.unlock();
+            }
+            if (size > current.rebalanceSize) tryRebalance(current);
+            return;
+        }
+    }
+
+    // Delete the element from the tree
+    // Returns true if the element was found and deleted
+    public boolean delete(E element) {
+        while (true) {
+            Layout<E> current = layout;
+            Shard<E> shard = current.shards[shardIndex(current, element)];
+            boolean deleted;
+            int size;
+            shard.lock.lock();
+            try {
+                if (shard.retired) continue;
+                deleted = shard.tree.delete(element);
+                size = shard.tree.size();
+                shard.size = size;
+            } finally {
+                shard.lock.unlock();
+            }
+            if (size < current.shrinkSize) tryRebalance(current);
+            return deleted;
+        }
+    }
+
+    // Returns how many elements are between a (inclusive) and b (inclusive)
+    // Assumes a <= b. See the note above about ranges spanning several shards.
+    public int rangeCount(E a, E b) {
+        while (true) {
+            Layout<E> current = layout;
+            int first = shardIndex(current, a);
+            int last = shardIndex(current, b);
+            int count = countInShard(current.shards[first], a, b);
+            if (count < 0) continue;
+            if (last != first) {
+                for (int i = first + 1; i < last; i++) count += current.shards[i].size;
+                int lastCount = countInShard(current.shards[last], a, b);
+                if (lastCount < 0) continue;
+                count += lastCount;
+            }
+            return count;
+        }
+    }
+
+    // Number of elements in the tree (from the shards' cached sizes)
+    public int size() {
+        int total = 0;
+        for (Shard<E> shard : layout.shards) total += shard.size;
+        return total;
+    }
+
+    // Number of shards the elements are currently spread over
+    public int shardCount() {
+        return layout.shards.length;
+    }
+
+    // Redistribute the elements evenly over the shards
+    // Blocks every operation on the tree while it runs, O(n).
+    public void rebalance() {
+        rebalanceLock.lock();
+        try {
+            rebalance(layout);
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    // *************************************
+    // Helper functions
+    // *************************************
+    // Index of the shard of layout that element belongs in
+    int shardIndex(Layout<E> layout, E element) {
+        Object[] bounds = layout.bounds;
+        int lo = 0, hi = bounds.length;  // Count the bounds <= element
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparator.compare(SplayTree.elementAt(bounds, mid), element) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Count the shard's elements in [a, b] under its lock
+    // Returns -1 if the shard has been retired (the caller must start over).
+    int countInShard(Shard<E> shard, E a, E b) {
+        shard.lock.lock();
+        try {
+            if (shard.retired) return -1;
+            return shard.tree.rangeCount(a, b);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    // Rebalance after a shard of the given layout grew or shrank too far, unless
+    // another thread is already doing so (or has done so since)
+    void tryRebalance(Layout<E> old) {
+        if (!rebalanceLock.tryLock()) return;
+        try {
+            if (layout == old) rebalance(old);
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    // Replace the given (current) layout by an evenly balanced one
+    // Must hold rebalanceLock.
+    void rebalance(Layout<E> old) {
+        Shard<E>[] oldShards = old.shards;
+        for (Shard<E> shard : oldShards) shard.lock.lock();
+        try {
+            // The shards are in key order, so their contents concatenate in order
+            int n = 0;
+            for (Shard<E> shard : oldShards) n += shard.tree.size();
+            Object[] all = new Object[n];
+            int pos = 0;
+            for (Shard<E> shard : oldShards) pos = shard.tree.toArray(shard.tree.root, all, null, pos);
+
+            int count = Math.max(1, Math.min(numShards, n));
+            Object[] bounds = new Object[count - 1];
+            SplayTree<E>[] trees = newTrees(count);
+            for (int i = 0; i < count; i++) {
+                int from = (int) ((long) n * i / count);
+                int to = (int) ((long) n * (i + 1) / count);
+                if (i > 0) bounds[i - 1] = all[from];
+                trees[i] = new SplayTree<>(comparator);
+                trees[i].root = trees[i].build(all, null, from, to);
+            }
+            int share = n / count;
+            int rebalanceSize = Math.max(MIN_REBALANCE_SIZE, 2 * (share + 1));
+            int shrinkSize = share >= MIN_REBALANCE_SIZE ? share / SHRINK_FACTOR : 0;
+
+            for (Shard<E> shard : oldShards) shard.retired = true;
+            layout = new Layout<>(bounds, newShards(trees), rebalanceSize, shrinkSize);
+        } finally {
+            for (Shard<E> shard : oldShards) shard.lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> SplayTree<E>[] newTrees(int count) {
+        return (SplayTree<E>[]) new SplayTree<?>[count];
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    static <E> Shard<E>[] newShards(SplayTree<E>... trees) {
+        Shard<E>[] shards = (Shard<E>[]) new Shard<?>[trees.length];
+        for (int i = 0; i < trees.length; i++) shards[i] = new Shard<>(trees[i]);
+        return shards;
+    }
+}
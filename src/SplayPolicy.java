@@ -0,0 +1,98 @@
+/****************
+ * Splay Policy
+ * Spring 2024
+ *
+ * Decides how much a read restructures a SplayTree. Reads are find,
+ * countLessThan and the queries built on them (rangeCount, rank, select,
+ * floor/ceiling/higher/lower). Writes always splay all the way to the root,
+ * since insert and delete need the node there.
+ *
+ * Fully splaying every read gives the usual amortized bounds, but on read-mostly
+ * and fairly uniform workloads it mostly just rewrites the top of the tree. The
+ * other policies make fewer rotations, all but semiSplay at the cost of some of
+ * those bounds:
+ *
+ *      full:           splay every read to the root (the default)
+ *      semiSplay:      Sleator and Tarjan's semi-splaying: rotate the read node
+ *                      about halfway up, roughly halving the depth of every
+ *                      node on its path, with fewer rotations than a full splay
+ *      halfwaySplay:   splay within the subtree halfway down the path, so the
+ *                      node only moves halfway up and the top of the tree is left alone
+ *                      (unlike semiSplay, the path above that subtree is not touched)
+ *      depthThreshold: splay to the root only if the node was deeper than k
+ *      probabilistic:  splay to the root with probability p
+ *
+ * NOTE:
+ * With any policy but full, a read first descends without changing the tree
+ * (which already gives its answer) and then splays if the policy asks for it.
+ */
+import java.util.concurrent.ThreadLocalRandom;
+
+public interface SplayPolicy {
+    // Splay every read to the root
+    SplayPolicy FULL = new SplayPolicy() {
+        public int splayFrom(int depth) {
+            return 0;
+        }
+
+        public boolean alwaysFull() {
+            return true;
+        }
+    };
+
+    // Semi-splay every read (see SplayTree.semiSplay)
+    SplayPolicy SEMI = new SplayPolicy() {
+        public int splayFrom(int depth) {
+            return 0;
+        }
+
+        public boolean semiSplays() {
+            return true;
+        }
+    };
+
+    // A read ended at a node at the given depth (the root is at depth 0).
+    // Returns the depth of the ancestor whose subtree should be splayed for that
+    // node (0 splays it to the root), or -1 to leave the tree as it is.
+    // The result must not be larger than depth.
+    int splayFrom(int depth);
+
+    // True if every read is splayed to the root, in which case the tree splays
+    // while it descends rather than afterwards
+    default boolean alwaysFull() {
+        return false;
+    }
+
+    // True if a read splayFrom does not leave alone is semi-splayed along its
+    // whole path instead (the depth splayFrom returns then only matters if < 0)
+    default boolean semiSplays() {
+        return false;
+    }
+
+    // Splay every read to the root
+    static SplayPolicy full() {
+        return FULL;
+    }
+
+    // Semi-splay every read, moving it about halfway up its path
+    static SplayPolicy semiSplay() {
+        return SEMI;
+    }
+
+    // Splay every read within the subtree halfway down its path
+    static SplayPolicy halfwaySplay() {
+        return depth -> depth / 2;
+    }
+
+    // Splay a read node to the root only if it was deeper than k
+    static SplayPolicy depthThreshold(int k) {
+        if (k < 0) throw new IllegalArgumentException("Depth must not be negative: " + k);
+        return depth -> depth > k ? 0 : -1;
+    }
+
+    // Splay a read node to the root with probability p
+    static SplayPolicy probabilistic(double p) {
+        if (!(p >= 0 && p <= 1)) throw new IllegalArgumentException("Probability must be in [0, 1]: " + p);
+        return depth -> ThreadLocalRandom.current().nextDouble() < p ? 0 : -1;
+    }
+}
@@ -1,169 +1,677 @@
-
 /****************
  * Splay Tree
  * Author: Christian Duncan
  * Authors: Jonathan Mason
  * Spring 2024
- * 
+ *
  * This is a basic implementation of a Splay Tree which is augmented with a
  * size field. It supports inserting, deleting, and range count.
- * 
+ *
+ * By default the tree is a set. A tree created as a multiset instead keeps a
+ * count of how many times each element was inserted in its node; the sizes
+ * (and so range counts, ranks and selects) include those multiplicities, so a
+ * heavily repeated element still costs a single node.
+ *
  * NOTE:
- * Currently, the size field is not being updated correctly and the range count 
- * functionality (namely the helper methods) is not fully working.
- * The methods that need repair are higlighted with "NOTE: REPAIR PLEASE"
- * 
- * The methods to repair are:
- *      insert: The sizes of all the ancestors of newest node must increase by one
- *      delete: The sizes of all the ancestors of deleted node must decrease by one
- *      rotateLeft: The sizes of the two changed nodes - u and v - must be updated
- *      rotateRight: The sizes of the two changed nodes - u and v - must be updated
- *      countLessThan: The sizes need to be used to determine the count
+ * Splaying is done top-down (Sleator and Tarjan): the search path is split into
+ * a left tree (everything smaller than the target) and a right tree (everything
+ * larger) while descending, and the three pieces are reassembled around the last
+ * node visited. So every operation is a single walk down the tree and the nodes
+ * do not need a parent pointer.
+ *
+ * The size fields of nodes hung onto the left and right trees can only be known
+ * once the descent ends, so splay finishes by walking the two assembled spines
+ * (no comparisons, just the sizes) before reattaching them to the new root.
  */
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class SplayTree<E> {
+public class SplayTree<E> implements Iterable<E> {
     // A single node of the splay tree
-    class TreeNode<E> {
+    // (static, so nodes carry no hidden reference to their tree)
+    static class TreeNode<E> {
         TreeNode<E> left;    // Left child
         TreeNode<E> right;   // Right child
-        TreeNode<E> parent;  // Parent (null if node is the root)
         int size;            // Number of elements in this node's subtree
+        int count;           // Number of copies of element (always 1 in a set)
         E element;
 
         TreeNode(E element) {
             this.element = element;
-            size = 1;  // Every node has at least their node in their subtree!
-            left = right = parent = null;
+            size = count = 1;  // Every node has at least their node in their subtree!
+            left = right = null;
         }
     }
 
+    // Natural ordering of the elements (they must be Comparable)
+    // Shared by every natural-order tree, so its compareTo call sees every key type.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static final Comparator<Object> NATURAL_ORDER = (a, b) -> ((Comparable) a).compareTo(b);
+
     TreeNode<E> root;
 
+    // Ordering of the elements, fixed at construction
+    // The JIT profiles the call in compare() across every tree in the JVM, not
+    // per tree, so it is only inlined while the JVM uses one or two orderings;
+    // the primitive trees (IntSplayTree, ...) avoid the call altogether.
+    final Comparator<? super E> comparator;
+
+    // True if repeated inserts of an element are counted rather than ignored
+    final boolean multiset;
+
+    // Collect statistics on operations and access paths (see SplayTreeStats)
+    // Off unless the JVM is started with -Dsplaytree.stats=true. As this is a
+    // constant, the JIT drops every "if (STATS)" check when it is off.
+    static final boolean STATS = Boolean.getBoolean("splaytree.stats");
+    final SplayTreeStats stats = STATS ? new SplayTreeStats(this) : null;
+
+    // How much reads restructure the tree (see SplayPolicy)
+    SplayPolicy policy = SplayPolicy.FULL;
+
+    // Scratch node used by splay to hold the left and right trees being assembled
+    // (kept around so splaying does not allocate)
+    final TreeNode<E> header = new TreeNode<>(null);
+
+    // Scratch stack of the nodes on a search path, used by semiSplay (grown as needed)
+    @SuppressWarnings("unchecked")
+    TreeNode<E>[] path = (TreeNode<E>[]) new TreeNode<?>[16];
+
+    // Optional pool of deleted nodes for insert to reuse (see setNodePool),
+    // linked through their right fields
+    TreeNode<E> pool;
+    int pooled;        // Nodes currently in the pool
+    int poolCapacity;  // Most nodes the pool keeps (0 = no pool)
+
+    // The last snapshot taken (see snapshot), published for readers on other threads
+    volatile SplayTreeSnapshot<E> latestSnapshot;
+
+    // Create an empty tree ordered by the elements' natural ordering
     public SplayTree() {
+        this(NATURAL_ORDER);
+    }
+
+    // Create an empty tree ordered by the given comparator
+    public SplayTree(Comparator<? super E> comparator) {
+        this(comparator, false);
+    }
+
+    // Create an empty set (or multiset, if multiset is true) ordered by the given comparator
+    public SplayTree(Comparator<? super E> comparator, boolean multiset) {
+        if (comparator == null) throw new NullPointerException("comparator");
+        this.comparator = comparator;
+        this.multiset = multiset;
         root = null;
     }
 
+    // Create an empty multiset ordered by the elements' natural ordering
+    public static <E> SplayTree<E> newMultiset() {
+        return new SplayTree<>(NATURAL_ORDER, true);
+    }
+
+    // True if this tree is a multiset
+    public boolean isMultiset() {
+        return multiset;
+    }
+
+    // Choose how much reads (find, rangeCount, rank, select, floor, ...) splay
+    public void setSplayPolicy(SplayPolicy policy) {
+        if (policy == null) throw new NullPointerException("policy");
+        this.policy = policy;
+    }
+
+    // The policy deciding how much reads splay
+    public SplayPolicy splayPolicy() {
+        return policy;
+    }
+
+    // Keep up to capacity deleted nodes for later inserts to reuse, so a tree
+    // whose size holds steady while elements come and go stops allocating
+    // (0, the default, turns the pool off and lets the GC have them)
+    public void setNodePool(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Negative pool capacity: " + capacity);
+        poolCapacity = capacity;
+        while (pooled > capacity) {
+            TreeNode<E> node = pool;
+            pool = node.right;
+            node.right = null;
+            pooled--;
+        }
+    }
+
+    // Number of deleted nodes waiting in the pool
+    public int pooledNodes() {
+        return pooled;
+    }
+
+    // The statistics collected for this tree (null unless -Dsplaytree.stats=true)
+    public SplayTreeStats stats() {
+        return stats;
+    }
+
+    // The comparator ordering this tree (natural ordering if none was given)
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
     // Insert the given element into the Splay Tree
-    // This is a set so if the element is already present, then it will not
-    // be inserted.
-    // NOTE: REPAIR PLEASE (see note in method)
+    // In a set, if the element is already present, then it will not be inserted.
+    // In a multiset, its count goes up by one.
     public void insert(E element) {
+        insert(element, 1);
+    }
+
+    // Insert the given number of copies of element (only one in a set)
+    // Throws IllegalStateException if the tree would then hold more than
+    // Integer.MAX_VALUE elements (counting every copy).
+    public void insert(E element, int times) {
+        if (STATS) stats.inserts++;
+        if (times < 1) throw new IllegalArgumentException("Must insert at least one copy: " + times);
+        if (!multiset) times = 1;
+        checkRoom(times);
         if (root == null) {
-            root = new TreeNode<>(element);
+            root = newNode(element, times);
         } else {
-            TreeNode<E> location = find(element, false);
-            int comp = compare(location.element, element);
-            if (comp != 0) {
-                // A new node needs to be created and added
-                TreeNode<E> newNode = new TreeNode<>(element);
-                newNode.parent = location; // Update the parent of this node
+            root = splay(root, element);
+            int comp = compare(root.element, element);
+            if (comp == 0) {
+                if (multiset) {
+                    root.count += times;
+                    root.size += times;
+                }
+            } else {
+                // A new node needs to be created and becomes the root.
+                // The old root is the neighbour of element, so the tree splits
+                // cleanly between the old root and one of its subtrees.
+                TreeNode<E> newNode = newNode(element, times);
+                newNode.size = root.size + times;
                 if (comp < 0) {
-                    // Element will go to the right
-                    assert (location.right == null);
-                    location.right = newNode;
+                    // Old root and its left subtree are smaller than element
+                    newNode.right = root.right;
+                    root.right = null;
+                    root.size -= size(newNode.right);
+                    newNode.left = root;
                 } else {
-                    // Element will go to the left
-                    assert (location.left == null);
-                    location.left = newNode;
-                }
-
-                // ********************
-                // NOTE: REPAIR PLEASE
-                // 
-                // Update the sizes for all ancestors of location node (starting with location)
-                //       You need to update the size of each node going up the parent
-                //       until the root. Each node along the way should increase their
-                //       size by 1 (to reflect the newly inserted node)
-                
-                TreeNode<E> updateNode = location;
-                // Insert code here!
-                // ********************
-                while(updateNode != null){
-                    updateNode.size++;
-                    updateNode = updateNode.parent;
+                    // Old root and its right subtree are larger than element
+                    newNode.left = root.left;
+                    root.left = null;
+                    root.size -= size(newNode.left);
+                    newNode.right = root;
                 }
-
-
-                // Identify where to do the splaying
-                location = newNode;
+                root = newNode;
             }
-
-            // Splay from the location node
-            splay(location);
         }
     }
 
-    // Delete the element from the tree
+    // Delete the element from the tree (one copy of it, in a multiset)
     // Returns true if the element was found and deleted
     // Returns false if the element was not found in the Tree
-    // NOTE: REPAIR PLEASE (see note in method)
     public boolean delete(E element) {
+        if (STATS) stats.deletes++;
         if (root == null) return false; // Nothing to delete
-        TreeNode<E> location = find(element, false);
-        int comp = compare(location.element, element);
-        if (comp == 0) {
-            // Found the node to delete
-            if (location.left != null && location.right != null) {
-                // Both children are not null. Move right most node on left to here
-                TreeNode<E> sub = location.left;
-                while (sub.right != null) sub = sub.right;
-                location.element = sub.element; // Move its content over
-                location = sub;  // This is the one to delete
+        root = splay(root, element);
+        if (compare(root.element, element) != 0) return false;
+
+        if (root.count > 1) {
+            // Other copies remain
+            root.count--;
+            root.size--;
+        } else {
+            removeRoot(element);
+        }
+        return true;
+    }
+
+    // Delete every copy of the element from the tree
+    // Returns how many copies were deleted (0 if it was not in the tree)
+    public int deleteAll(E element) {
+        if (STATS) stats.deletes++;
+        if (root == null) return 0;
+        root = splay(root, element);
+        if (compare(root.element, element) != 0) return 0;
+        int count = root.count;
+        removeRoot(element);
+        return count;
+    }
+
+    // Returns how many copies of the element are in the tree (0 or 1 in a set)
+    public int count(E element) {
+        if (STATS) stats.queries++;
+        TreeNode<E> location = find(element, true);
+        return location != null && compare(location.element, element) == 0 ? location.count : 0;
+    }
+
+    // Remove the root node, which holds element, from the tree
+    void removeRoot(E element) {
+        TreeNode<E> old = root;
+        if (old.left == null) {
+            root = old.right;
+        } else {
+            // Everything on the left is smaller than element, so splaying the left
+            // subtree for element brings its largest node up (with no right child)
+            root = splay(old.left, element);
+            root.right = old.right;
+            root.size += size(old.right);
+        }
+        if (pooled < poolCapacity) {
+            // Clear the node so the pool does not keep its element (or subtrees) alive
+            old.element = null;
+            old.left = null;
+            old.right = pool;
+            pool = old;
+            pooled++;
+        }
+    }
+
+    // Returns true if the element is in the tree
+    public boolean contains(E element) {
+        if (STATS) stats.queries++;
+        TreeNode<E> location = find(element, true);
+        return location != null && compare(location.element, element) == 0;
+    }
+
+    // Returns how many elements are between a (inclusive) and b (inclusive)
+    // Assumes a <= b.
+    public int rangeCount(E a, E b) {
+        if (STATS) stats.rangeCounts++;
+        if (root == null) return 0;
+        if (!policy.alwaysFull()) {
+            // Count each end with a plain descent, splaying only as the policy says
+            return countLessThan(b, true, true) - countLessThan(a, false, true);
+        }
+
+        // Splay a to the root: the elements >= a are then the root (if it is >= a)
+        // and everything in its right subtree
+        root = splay(root, a);
+        int count = 0;
+        if (compare(root.element, a) >= 0) {
+            if (compare(root.element, b) > 0) return 0;  // Even the smallest is past b
+            count += root.count;
+        }
+
+        // Count the right subtree's elements <= b by splaying b within that
+        // subtree only, so a stays at the root and its splay is not undone
+        if (root.right != null) {
+            TreeNode<E> right = splay(root.right, b);
+            root.right = right;
+            count += size(right.left);
+            if (compare(right.element, b) <= 0) count += right.count;
+        }
+        return count;
+    }
+
+    // Replace the contents of the tree with the given elements, which must come
+    // in sorted order (equal neighbours are kept once, or counted in a multiset).
+    // Builds a perfectly balanced tree in O(n) without any splaying.
+    public void buildFromSorted(Iterator<? extends E> sorted) {
+        ArrayList<E> list = new ArrayList<>();
+        int[] counts = new int[16];
+        E prev = null;
+        while (sorted.hasNext()) {
+            E e = sorted.next();
+            if (!list.isEmpty()) {
+                int comp = compare(prev, e);
+                if (comp > 0) throw new IllegalArgumentException("Input is not sorted: " + prev + " comes before " + e);
+                if (comp == 0) {
+                    // Already have it
+                    if (multiset) counts[list.size() - 1]++;
+                    continue;
+                }
             }
+            if (list.size() == counts.length) counts = Arrays.copyOf(counts, counts.length * 2);
+            counts[list.size()] = 1;
+            list.add(e);
+            prev = e;
+        }
+        root = build(list.toArray(), counts, 0, list.size());
+    }
+
+    // Replace the contents of the tree with the given elements (in any order)
+    // Sorts them and builds a balanced tree: O(n log n) for the sort, O(n) to build.
+    public void buildFrom(Collection<? extends E> elements) {
+        Object[] a = elements.toArray();
+        int[] counts = new int[a.length];
+        int n = sortDistinct(a, counts);
+        root = build(a, counts, 0, n);
+    }
+
+    // Insert all the given elements into the tree
+    // The batch is sorted first. A small batch is inserted one at a time in that
+    // order (each insert starts right next to the previous one, so splaying is
+    // cheap); a batch that is large compared to the tree is merged with the tree's
+    // contents and the tree rebuilt in O(n + m) with no splaying at all.
+    public void insertAll(Collection<? extends E> batch) {
+        checkRoom(batch.size());
+        Object[] a = batch.toArray();
+        int[] aCounts = new int[a.length];
+        int m = sortDistinct(a, aCounts);
+        int log = 32 - Integer.numberOfLeadingZeros(size(root));  // About log2(n)
+        if ((long) m * log < size(root)) {
+            for (int i = 0; i < m; i++) insert(elementAt(a, i), aCounts[i]);
+            return;
+        }
 
-            // Delete the node at location (at most one child node)
-            TreeNode<E> parent = location.parent;
-            TreeNode<E> child = location.left == null ? location.right : location.left;
-            // Make the parent point to the child (special case for root)
-            if (location == root) {
-                root = child;
+        // Merge the sorted batch with the tree's elements (also sorted)
+        Object[] current = new Object[size(root)];
+        int[] currentCounts = new int[current.length];
+        int n = toArray(root, current, currentCounts, 0);
+        Object[] merged = new Object[n + m];
+        int[] counts = new int[n + m];
+        int i = 0, j = 0, k = 0;
+        while (i < n || j < m) {
+            int comp = i == n ? 1 : j == m ? -1 : compare(elementAt(current, i), elementAt(a, j));
+            if (comp < 0) {
+                counts[k] = currentCounts[i];
+                merged[k++] = current[i++];
+            } else if (comp > 0) {
+                counts[k] = aCounts[j];
+                merged[k++] = a[j++];
             } else {
-                if (parent.left == location) parent.left = child;
-                else parent.right = child;                    
+                // Already present, keep the tree's copy (adding up the counts in a multiset)
+                counts[k] = multiset ? currentCounts[i] + aCounts[j] : 1;
+                merged[k++] = current[i++];
+                j++;
             }
+        }
+        root = build(merged, counts, 0, k);
+    }
 
-            // Update the child's parent
-            if (child != null) child.parent = parent;
-
-            // ********************
-            // NOTE: REPAIR PLEASE
-            //
-            // Update the sizes for all ancestors of parent node (starting with parent)
-            // You need to update the size of each node going up the parent
-            // until the root. Each node along the way should decrease their
-            // size by 1 (to reflect the newly inserted node)
-
-            TreeNode<E> updateNode = parent;
-            // Insert code here!
-            // ********************
-            while(updateNode != null){
-                updateNode.size--;
-                updateNode = updateNode.parent;
+    // Remove every element >= key from this tree and return them as a new tree
+    // (with the same ordering). O(log n) amortized.
+    public SplayTree<E> split(E key) {
+        SplayTree<E> upper = new SplayTree<>(comparator, multiset);
+        upper.root = splitOff(key, false);
+        return upper;
+    }
+
+    // Move every element of other onto the end of this tree, leaving other empty
+    // Every element of this tree must be smaller than every element of other,
+    // and both trees must be sets or both multisets, with the same comparator.
+    // O(log n) amortized.
+    public void join(SplayTree<E> other) {
+        if (other == this) throw new IllegalArgumentException("Cannot join a tree to itself");
+        if (multiset != other.multiset) throw new IllegalArgumentException("Cannot join a set with a multiset");
+        if (!comparator.equals(other.comparator)) throw new IllegalArgumentException("Cannot join trees with different orderings");
+        if (root != null && other.root != null) {
+            // Bring this tree's largest and other's smallest elements to their roots
+            root = splayRank(root, root.size - 1);
+            other.root = other.splayRank(other.root, 0);
+            if (compare(root.element, other.root.element) >= 0) {
+                throw new IllegalArgumentException("Trees overlap: " + root.element + " is not smaller than " + other.root.element);
             }
+        }
+        root = join(root, other.root);
+        other.root = null;
+    }
+
+    // Delete every element between a (inclusive) and b (inclusive)
+    // Returns how many elements were deleted. O(log n) amortized.
+    public int deleteRange(E a, E b) {
+        TreeNode<E> middle = detachRange(a, b);
+        return size(middle);
+    }
+
+    // Remove every element between a (inclusive) and b (inclusive) and return
+    // them as a new tree (with the same ordering). O(log n) amortized.
+    public SplayTree<E> extractRange(E a, E b) {
+        SplayTree<E> range = new SplayTree<>(comparator, multiset);
+        range.root = detachRange(a, b);
+        return range;
+    }
+
+    // Add every element of other to this tree (adding up the counts, in a
+    // multiset), leaving other empty
+    public void union(SplayTree<E> other) {
+        if (other != this) checkRoom(other.size());
+        setOperation(other, SetOperation.UNION);
+    }
 
-            
-            // Identify where to do the splaying
-            location = parent;
+    // Keep only the elements which are also in other (with the smaller of the
+    // two counts, in a multiset), leaving other empty
+    public void intersection(SplayTree<E> other) {
+        setOperation(other, SetOperation.INTERSECTION);
+    }
+
+    // Delete every element of other from this tree (subtracting its count, in a
+    // multiset), leaving other empty
+    public void difference(SplayTree<E> other) {
+        setOperation(other, SetOperation.DIFFERENCE);
+    }
+
+    // A cursor on the smallest element (see SplayTreeCursor)
+    public SplayTreeCursor<E> cursor() {
+        SplayTreeCursor<E> cursor = new SplayTreeCursor<>(this);
+        if (root != null) {
+            root = splayRank(root, 0);
+            cursor.current = root.element;
         }
+        return cursor;
+    }
 
-        // Splay the location node to the root
-        splay(location);
+    // A cursor on the smallest element >= e
+    public SplayTreeCursor<E> cursor(E e) {
+        SplayTreeCursor<E> cursor = new SplayTreeCursor<>(this);
+        cursor.seek(e);
+        return cursor;
+    }
 
-        return comp == 0;  // True = deleted node, False = we didn't
+    // Number of elements in the tree
+    public int size() {
+        return size(root);
     }
 
-    // Returns how many elements are between a (inclusive) and b (inclusive)
-    // Assumes a <= b.
-    public int rangeCount(E a, E b) {
-        // This can be done by determining how many elements are less than b
-        // and how many are less than a and taking the difference!
+    // Returns the k-th smallest element (k = 0 is the smallest)
+    public E select(int k) {
+        if (STATS) stats.queries++;
+        if (k < 0 || k >= size(root)) throw new IndexOutOfBoundsException("k = " + k + ", size = " + size(root));
+        if (policy.alwaysFull()) {
+            root = splayRank(root, k);
+            return root.element;
+        }
+
+        TreeNode<E> curr = root;
+        int depth = 0;
+        while (true) {
+            int leftCount = size(curr.left);
+            if (k < leftCount) {
+                curr = curr.left;
+            } else if (k >= leftCount + curr.count) {
+                k -= leftCount + curr.count;
+                curr = curr.right;
+            } else {
+                break;
+            }
+            depth++;
+        }
+        afterRead(curr.element, depth);
+        return curr.element;
+    }
+
+    // Returns how many elements are strictly less than e
+    // (so the position e has, or would have, in sorted order)
+    public int rank(E e) {
+        if (STATS) stats.queries++;
+        return countLessThan(e, false, true);
+    }
+
+    // Returns the largest element <= e (null if there is none)
+    public E floor(E e) {
+        return closest(e, true, true);
+    }
+
+    // Returns the smallest element >= e (null if there is none)
+    public E ceiling(E e) {
+        return closest(e, false, true);
+    }
+
+    // Returns the smallest element > e (null if there is none)
+    public E higher(E e) {
+        return closest(e, false, false);
+    }
+
+    // Returns the largest element < e (null if there is none)
+    public E lower(E e) {
+        return closest(e, true, false);
+    }
+
+    // Returns the element at quantile q (0 <= q <= 1) using the nearest-rank
+    // method: the smallest element with at least q of the elements <= it.
+    // quantile(0) is the minimum, quantile(1) the maximum, null if the tree is empty.
+    public E quantile(double q) {
+        if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be in [0, 1]: " + q);
+        int n = size(root);
+        if (n == 0) return null;
+        int k = (int) Math.ceil(q * n) - 1;
+        return select(Math.max(0, Math.min(n - 1, k)));
+    }
+
+    // Height of the tree: the depth of its deepest node (-1 if empty)
+    // Walks the whole tree (without splaying) using an explicit stack.
+    public int height() {
+        if (root == null) return -1;
+        int height = 0;
+        ArrayDeque<TreeNode<E>> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        nodes.push(root);
+        depths.push(0);
+        while (!nodes.isEmpty()) {
+            TreeNode<E> node = nodes.pop();
+            int depth = depths.pop();
+            height = Math.max(height, depth);
+            if (node.left != null) {
+                nodes.push(node.left);
+                depths.push(depth + 1);
+            }
+            if (node.right != null) {
+                nodes.push(node.right);
+                depths.push(depth + 1);
+            }
+        }
+        return height;
+    }
+
+    // Iterate over the elements in order (every copy, in a multiset)
+    // Iterating does not splay, but the tree must not be changed or searched
+    // (which splays) until the iteration is done.
+    public Iterator<E> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    // Spliterator over the elements in order, which splits by subtree size so
+    // a parallel stream gets even halves however unbalanced the tree is
+    public Spliterator<E> spliterator() {
+        return new TreeSpliterator<>(this, 0, size(root));
+    }
+
+    // Spliterator over the elements between a (inclusive) and b (inclusive)
+    public Spliterator<E> spliterator(E a, E b) {
+        int from = countLessThan(a, false, false);
+        return new TreeSpliterator<>(this, from, Math.max(from, countLessThan(b, true, false)));
+    }
+
+    // Stream of the elements in order (see iterator)
+    public Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    // Stream of the elements between a (inclusive) and b (inclusive) in order
+    public Stream<E> stream(E a, E b) {
+        return StreamSupport.stream(spliterator(a, b), false);
+    }
+
+    // Take an immutable snapshot of the tree in sorted order (see SplayTreeSnapshot)
+    // which any number of threads can query without locking. O(n).
+    public SplayTreeSnapshot<E> snapshot() {
+        return snapshot(false);
+    }
+
+    // Take a snapshot in sorted or (if eytzinger) Eytzinger order and publish it
+    // as the latest snapshot
+    public SplayTreeSnapshot<E> snapshot(boolean eytzinger) {
+        Object[] sorted = new Object[size(root)];
+        int[] counts = new int[sorted.length];
+        int n = toArray(root, sorted, counts, 0);
+        SplayTreeSnapshot<E> snapshot = new SplayTreeSnapshot<>(comparator, sorted, counts, n, eytzinger);
+        latestSnapshot = snapshot;
+        return snapshot;
+    }
+
+    // Take a new snapshot (in the same layout as the last) unless the latest one
+    // is younger than maxAgeNanos. Called by the thread updating the tree, e.g.
+    // after every change, this rebuilds at most once per period while readers
+    // on other threads use latestSnapshot().
+    public SplayTreeSnapshot<E> refreshSnapshot(long maxAgeNanos) {
+        SplayTreeSnapshot<E> latest = latestSnapshot;
+        if (latest != null && latest.ageNanos() < maxAgeNanos) return latest;
+        return snapshot(latest != null && latest.eytzinger);
+    }
+
+    // The last snapshot taken (null if there is none), safe to call from any thread
+    public SplayTreeSnapshot<E> latestSnapshot() {
+        return latestSnapshot;
+    }
+
+    // Returns the rangeCount of every range [lows[i], highs[i]] (0 if lows[i] > highs[i])
+    // A sorted copy of the endpoints is counted in a single ordered sweep through
+    // the tree, O(n + m log m) at worst but skipping any subtree which lies between
+    // two consecutive endpoints; each range then finds its endpoints' counts by
+    // binary search. Nothing is splayed, so the tree's shape is untouched.
+    public int[] rangeCountAll(E[] lows, E[] highs) {
+        int m = lows.length;
+        if (highs.length != m) throw new IllegalArgumentException("Got " + m + " lows but " + highs.length + " highs");
+
+        // For each endpoint (in order): the elements < it and the copies of it present
+        @SuppressWarnings("unchecked")
+        E[] ends = (E[]) new Object[2 * m];
+        System.arraycopy(lows, 0, ends, 0, m);
+        System.arraycopy(highs, 0, ends, m, m);
+        Arrays.sort(ends, comparator);
+        int[] lessThan = new int[2 * m];
+        int[] present = new int[2 * m];
+
+        ArrayDeque<TreeNode<E>> stack = new ArrayDeque<>();  // Unpassed nodes, smallest on top
+        int passed = 0;  // Number of elements known to be smaller than the current endpoint
+        TreeNode<E> curr = root;
+        for (int i = 0; i < ends.length; i++) {
+            E x = ends[i];
+            // Pass every element smaller than x, skipping whole left subtrees at once
+            while (true) {
+                if (curr != null) {
+                    if (compare(curr.element, x) < 0) {
+                        passed += size(curr.left) + curr.count;
+                        curr = curr.right;
+                    } else {
+                        stack.push(curr);
+                        curr = curr.left;
+                    }
+                } else if (!stack.isEmpty() && compare(stack.peek().element, x) < 0) {
+                    passed += stack.peek().count;
+                    curr = stack.pop().right;
+                } else {
+                    break;
+                }
+            }
+            lessThan[i] = passed;
+            if (!stack.isEmpty() && compare(stack.peek().element, x) == 0) present[i] = stack.peek().count;
+        }
 
-        int lessThanA = countLessThan(a, false, true); // all < a
-        // System.out.println("DEBUG: <" + a + " = " + lessThanA);
-        int lessThanB = countLessThan(b, true, true);  // all <= b
-        // System.out.println("DEBUG: <=" + b + " = " + lessThanB);
-        return lessThanB - lessThanA;  // Number of elements between a and b.
+        int[] counts = new int[m];
+        for (int j = 0; j < m; j++) {
+            int low = Arrays.binarySearch(ends, lows[j], comparator);
+            int high = Arrays.binarySearch(ends, highs[j], comparator);
+            counts[j] = Math.max(0, lessThan[high] + present[high] - lessThan[low]);
+        }
+        return counts;
     }
 
     // Display the tree to the provided output stream
@@ -181,17 +689,265 @@ public class SplayTree<E> {
         if (node == null) {
             out.println(indent + "()");
         } else {
-            out.println(indent + "(" + node.element + " " + "Size: " + node.size);
+            out.println(indent + "(" + node.element + " " + "Size: " + node.size + (multiset ? " Count: " + node.count : ""));
             printTree(out, node.left, indent + "  ");
             printTree(out, node.right, indent + "  ");
             out.println(indent + ")");
         }
     }
 
-    // Compare two elements using their natural ordering
+    // Split the tree at key: the elements greater than key (and key itself unless
+    // keepKey) are detached and returned as a subtree, the rest stay in root.
+    TreeNode<E> splitOff(E key, boolean keepKey) {
+        if (root == null) return null;
+        root = splay(root, key);
+        int comp = compare(root.element, key);
+        TreeNode<E> upper;
+        if (comp < 0 || (comp == 0 && keepKey)) {
+            // The root stays below the split, its right subtree goes
+            upper = root.right;
+            root.right = null;
+            root.size -= size(upper);
+        } else {
+            // The root goes above the split, its left subtree stays
+            upper = root;
+            root = upper.left;
+            upper.left = null;
+            upper.size -= size(root);
+        }
+        return upper;
+    }
+
+    // Throw if adding this many elements could take the size (which counts every
+    // copy, in a multiset) past Integer.MAX_VALUE, before anything is changed
+    void checkRoom(long added) {
+        if (size(root) + added > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Tree would hold more than " + Integer.MAX_VALUE + " elements");
+        }
+    }
+
+    // Join two subtrees where every element of lower is smaller than every
+    // element of upper. Returns the root of the combined subtree.
+    TreeNode<E> join(TreeNode<E> lower, TreeNode<E> upper) {
+        if (lower == null) return upper;
+        // The largest node of lower has no right child once splayed up
+        lower = splayRank(lower, lower.size - 1);
+        lower.right = upper;
+        lower.size += size(upper);
+        return lower;
+    }
+
+    // Combine other into this tree by the given SetOperation
+    // Both trees must be sets or both multisets, with the same comparator.
+    // The smaller tree is flattened into a sorted array; its middle element
+    // splits the larger tree, and the two halves are combined recursively (as
+    // fork-join tasks while they are large) and joined back under the middle.
+    // The splits do not splay (see splitSubtree), so their cost is the depth
+    // of the larger tree along each path: O(m log(n/m + 1)) comparisons for
+    // trees of sizes m <= n only while that tree is roughly balanced (e.g.
+    // after buildFrom), and up to O(n log m) once sequential inserts have left
+    // it a path.
+    void setOperation(SplayTree<E> other, int op) {
+        if (other == this) throw new IllegalArgumentException("Cannot combine a tree with itself");
+        if (multiset != other.multiset) throw new IllegalArgumentException("Cannot combine a set with a multiset");
+        if (!comparator.equals(other.comparator)) throw new IllegalArgumentException("Cannot combine trees with different orderings");
+        boolean pivotsAreThis = size(root) < size(other.root);
+        SplayTree<E> smaller = pivotsAreThis ? this : other;
+        Object[] pivots = new Object[size(smaller.root)];
+        int[] counts = new int[pivots.length];
+        int n = toArray(smaller.root, pivots, counts, 0);
+
+        // The tasks build new nodes, so keep them away from the (unsynchronized) pool
+        TreeNode<E> pool = this.pool;
+        this.pool = null;
+        try {
+            TreeNode<E> t = pivotsAreThis ? other.root : root;
+            root = new SetOperation<>(this, op, pivotsAreThis, pivots, counts, 0, n, t).invoke();
+        } finally {
+            this.pool = pool;
+        }
+        other.root = null;
+    }
+
+    // Split the subtree at t into the elements < key (parts[0]), the node
+    // holding key (parts[1], null if there is none) and the elements > key
+    // (parts[2]). Unlike splitOff this does not splay, so it uses no scratch
+    // space of the tree and different subtrees can be split at the same time.
+    void splitSubtree(TreeNode<E> t, E key, TreeNode<E>[] parts) {
+        TreeNode<E> less = null, lessTail = null;        // Nodes < key, linked by right
+        TreeNode<E> greater = null, greaterTail = null;  // Nodes > key, linked by left
+        int lessLinks = 0, greaterLinks = 0;
+        int lessSize = 0, greaterSize = 0;
+        TreeNode<E> middle = null;
+        while (t != null) {
+            int comp = compare(t.element, key);
+            if (comp < 0) {
+                if (lessTail == null) less = t;
+                else lessTail.right = t;
+                lessTail = t;
+                lessLinks++;
+                lessSize += size(t.left) + t.count;
+                t = t.right;
+            } else if (comp > 0) {
+                if (greaterTail == null) greater = t;
+                else greaterTail.left = t;
+                greaterTail = t;
+                greaterLinks++;
+                greaterSize += size(t.right) + t.count;
+                t = t.left;
+            } else {
+                middle = t;
+                break;
+            }
+        }
+
+        // Whatever was below key's node finishes off the two spines
+        TreeNode<E> lessRest = middle == null ? null : middle.left;
+        TreeNode<E> greaterRest = middle == null ? null : middle.right;
+        if (lessTail == null) less = lessRest;
+        else lessTail.right = lessRest;
+        if (greaterTail == null) greater = greaterRest;
+        else greaterTail.left = greaterRest;
+
+        // Fix the sizes down each spine, as splay does
+        lessSize += size(lessRest);
+        TreeNode<E> y = less;
+        for (int i = 0; i < lessLinks; i++, y = y.right) {
+            y.size = lessSize;
+            lessSize -= size(y.left) + y.count;
+        }
+        greaterSize += size(greaterRest);
+        y = greater;
+        for (int i = 0; i < greaterLinks; i++, y = y.left) {
+            y.size = greaterSize;
+            greaterSize -= size(y.right) + y.count;
+        }
+        if (middle != null) {
+            middle.left = middle.right = null;
+            middle.size = middle.count;
+        }
+        parts[0] = less;
+        parts[1] = middle;
+        parts[2] = greater;
+    }
+
+    // Join two subtrees where every element of lower is smaller than every
+    // element of upper, without splaying: the largest node of lower is moved
+    // up to be the root. Returns the root of the combined subtree.
+    TreeNode<E> concat(TreeNode<E> lower, TreeNode<E> upper) {
+        if (lower == null) return upper;
+        if (upper == null) return lower;
+        TreeNode<E> max = lower;
+        while (max.right != null) max = max.right;
+        if (max != lower) {
+            // Unhook max from the right spine, which loses its copies all the way down
+            TreeNode<E> y = lower;
+            while (true) {
+                y.size -= max.count;
+                if (y.right == max) break;
+                y = y.right;
+            }
+            y.right = max.left;
+            max.left = lower;
+        }
+        max.right = upper;
+        max.size = size(max.left) + max.count + size(upper);
+        return max;
+    }
+
+    // Detach the elements between a (inclusive) and b (inclusive) from the tree
+    // Returns them as a subtree (null if there are none).
+    TreeNode<E> detachRange(E a, E b) {
+        if (compare(a, b) > 0) return null;
+        TreeNode<E> upper = splitOff(a, false);  // root keeps everything < a
+        TreeNode<E> lower = root;
+        root = upper;
+        TreeNode<E> tail = splitOff(b, true);    // root keeps [a, b]
+        TreeNode<E> middle = root;
+        root = join(lower, tail);
+        return middle;
+    }
+
+    // Build a perfectly balanced subtree from the sorted elements a[from..to-1]
+    // each with the matching count (counts == null means one copy of each)
+    // Returns null if the range is empty.
+    TreeNode<E> build(Object[] a, int[] counts, int from, int to) {
+        if (from >= to) return null;
+        int mid = (from + to) >>> 1;
+        TreeNode<E> node = newNode(elementAt(a, mid), counts == null ? 1 : counts[mid]);
+        node.left = build(a, counts, from, mid);
+        node.right = build(a, counts, mid + 1, to);
+        node.size = size(node.left) + size(node.right) + node.count;
+        return node;
+    }
+
+    // Sort the elements of a by the tree's ordering and squeeze out duplicates,
+    // recording how many copies of each there were in counts (1 for a set)
+    // Returns how many distinct elements are now at the front of a.
     @SuppressWarnings("unchecked")
+    int sortDistinct(Object[] a, int[] counts) {
+        Arrays.sort(a, (Comparator<Object>) comparator);
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (n == 0 || compare(elementAt(a, n - 1), elementAt(a, i)) != 0) {
+                counts[n] = 1;
+                a[n++] = a[i];
+            } else if (multiset) {
+                counts[n - 1]++;
+            }
+        }
+        Arrays.fill(a, n, a.length, null);
+        return n;
+    }
+
+    // A new node holding count copies of element (reusing a pooled node if possible)
+    TreeNode<E> newNode(E element, int count) {
+        TreeNode<E> node = pool;
+        if (node == null) {
+            node = new TreeNode<>(element);
+        } else {
+            pool = node.right;
+            pooled--;
+            node.right = null;
+            node.element = element;
+        }
+        node.size = node.count = count;
+        return node;
+    }
+
+    // Copy the (distinct) elements of the subtree at t into out (in order) starting
+    // at pos, and their counts into counts (unless it is null)
+    // Uses an explicit stack, so a long path-like tree cannot overflow the call stack.
+    // Returns the position after the last element copied.
+    int toArray(TreeNode<E> t, Object[] out, int[] counts, int pos) {
+        ArrayDeque<TreeNode<E>> stack = new ArrayDeque<>();
+        while (t != null || !stack.isEmpty()) {
+            while (t != null) {
+                stack.push(t);
+                t = t.left;
+            }
+            t = stack.pop();
+            if (counts != null) counts[pos] = t.count;
+            out[pos++] = t.element;
+            t = t.right;
+        }
+        return pos;
+    }
+
+    // The element stored at a[i] (arrays of elements are kept as Object[])
+    @SuppressWarnings("unchecked")
+    static <E> E elementAt(Object[] a, int i) {
+        return (E) a[i];
+    }
+
+    // Compare two elements using the tree's ordering
     int compare(E a, E b) {
-        return ((Comparable) a).compareTo(b);
+        return comparator.compare(a, b);
+    }
+
+    // Size of the (possibly empty) subtree at node
+    static int size(TreeNode<?> node) {
+        return node == null ? 0 : node.size;
     }
 
     // Find the node where the element resides
@@ -204,10 +960,18 @@ public class SplayTree<E> {
         if (root == null)
             return null;
 
+        if (splay && policy.alwaysFull()) {
+            // The last node visited ends up at the root
+            root = splay(root, e);
+            return root;
+        }
+
         TreeNode<E> last = null;
         TreeNode<E> curr = root;
+        int depth = -1;
         while (curr != null) {
             last = curr;
+            depth++;
             int comp = compare(curr.element, e);
             if (comp == 0) {
                 // Found the element
@@ -216,216 +980,546 @@ public class SplayTree<E> {
                 // Element e must lie to the right
                 curr = curr.right;
             } else {
-                // Element e must lie to the left (no change to count)
+                // Element e must lie to the left
                 curr = curr.left;
             }
         }
+        if (splay) afterRead(e, depth);
+        return last;
+    }
+
+    // Like closest, but always splays the answer all the way to the root
+    // whatever the policy, so the next search starts from it (used by cursors)
+    E splayClosest(E e, boolean below, boolean inclusive) {
+        if (STATS) stats.queries++;
+        if (root == null) return null;
+        root = splay(root, e);
+        int comp = compare(root.element, e);
+        if (comp == 0 ? inclusive : (comp < 0) == below) return root.element;
 
-        if (splay) {
-            // Splay the last node up
-            splay(last);
+        // As in closest, the answer is the nearest node on the wanted side,
+        // which one more splay lifts from the root's child to the root
+        TreeNode<E> side = below ? root.left : root.right;
+        if (side == null) return null;
+        side = splay(side, e);
+        if (below) root.left = side;
+        else root.right = side;
+        root = splay(root, side.element);
+        return root.element;
+    }
+
+    // Returns the closest element to e on one side of it
+    // If below: the largest element less than e, otherwise the smallest greater
+    // If inclusive: e itself counts if it is present
+    // The answer is splayed to the root, or to the root of its subtree just below it.
+    E closest(E e, boolean below, boolean inclusive) {
+        if (STATS) stats.queries++;
+        if (root == null) return null;
+        if (!policy.alwaysFull()) {
+            // Descend keeping the best candidate seen so far
+            E best = null;
+            int depth = -1;  // Depth of the last node on e's own search path
+            boolean passedE = false;
+            TreeNode<E> curr = root;
+            while (curr != null) {
+                if (!passedE) depth++;
+                int comp = compare(curr.element, e);
+                if (comp == 0) {
+                    if (inclusive) {
+                        best = curr.element;
+                        break;
+                    }
+                    passedE = true;  // Keep going to the neighbour on the wanted side
+                }
+                if (comp < 0 || (comp == 0 && !below)) {
+                    if (comp < 0 && below) best = curr.element;
+                    curr = curr.right;
+                } else {
+                    if (comp > 0 && !below) best = curr.element;
+                    curr = curr.left;
+                }
+            }
+            afterRead(e, depth);
+            return best;
         }
 
-        return last;
+        root = splay(root, e);
+        int comp = compare(root.element, e);
+        if (comp == 0 ? inclusive : (comp < 0) == below) return root.element;
+
+        // The root is e or its neighbour on the wrong side, so the answer is the
+        // nearest node of the subtree on the wanted side. Splaying that subtree
+        // for e brings it up, since all its elements lie on the same side of e.
+        if (below) {
+            if (root.left == null) return null;
+            root.left = splay(root.left, e);
+            return root.left.element;
+        } else {
+            if (root.right == null) return null;
+            root.right = splay(root.right, e);
+            return root.right.element;
+        }
     }
 
     // Return how many nodes in tree are less than (or equal to) element e
     // If inclusive: less than or equal to
     // Otherwise: strictly less than
     // If splay is true, then the last node visited is splayed to the top
+    // (or as far as the splay policy says)
     // For efficiency, this should be true (or the calling method should somehow do it)
-    // NOTE: REPAIR PLEASE (see note in method)
     int countLessThan(E e, boolean inclusive, boolean splay) {
         if (root == null) return 0;
 
-        // NOTE: REPAIR PLEASE
-        //       This function does not perform as needed.
-        //       It should traverse down the tree to find the node with element E
-        //       (for illustration inspect how find works)
-        //       Along the way, if making a right branch, then include the total of
-        //       all elements in left child's size field as well as the current node
-        //       since they are all less than e
-        //       If the node is found, also include all the elements in that final node's
-        //       left child as well, for the same reason.
-        // 
-        //       For efficiency, be sure to run a splay from the last (lowest) node explored!
-
-        // Currently it just performs the find without tracking count properly!
-        TreeNode<E> last = null;
+        if (splay && policy.alwaysFull()) {
+            // After splaying, the root is e or one of its neighbours so everything
+            // smaller than e is in the root's left subtree (plus maybe the root)
+            root = splay(root, e);
+            int comp = compare(root.element, e);
+            int count = size(root.left);
+            if (comp < 0 || (comp == 0 && inclusive)) count += root.count;
+            return count;
+        }
+
         TreeNode<E> curr = root;
         int count = 0;
+        int depth = -1;
         while (curr != null) {
-            last = curr;
+            depth++;
             int comp = compare(curr.element, e);
             if (comp == 0) {
                 // Found the element
-                if (inclusive){
-                    if(curr.left != null){
-                        count += curr.left.size + 1;
-                    }else{ 
-                        count++;  // Include this node as well
-                    }
-                } 
+                count += size(curr.left);
+                if (inclusive) count += curr.count;  // Include this node as well
                 break;
             } else if (comp < 0) {
-                // Element e must lie to the right
-                if(curr.left != null){
-                    count += curr.left.size;
-                }
-                count++;
-
+                // Element e must lie to the right: this node and its left subtree are smaller
+                count += size(curr.left) + curr.count;
                 curr = curr.right;
             } else {
                 // Element e must lie to the left (no change to count)
                 curr = curr.left;
             }
         }
+        if (splay) afterRead(e, depth);
+        return count;
+    }
 
-        if (splay) {
-            // Splay the last node up
-            splay(last);
+    // A read which did not splay ended at depth on the search path for e.
+    // Splay the tree as much as the policy asks for.
+    // The splay records the descent itself, so it is only recorded here if the
+    // policy leaves the tree alone.
+    void afterRead(E e, int depth) {
+        int from = policy.splayFrom(depth);
+        if (from < 0) {
+            if (STATS) stats.recordDescent(depth, 0);
+            return;
+        }
+        if (policy.semiSplays()) {
+            root = semiSplay(root, e, depth);
+            return;
+        }
+        if (from == 0) {
+            root = splay(root, e);
+            return;
         }
 
-        return count;
+        // Walk down to the node just above depth from and splay its child's subtree
+        // (the sizes above do not change since that subtree keeps the same nodes)
+        TreeNode<E> parent = root;
+        for (int i = 1; i < from; i++) {
+            parent = compare(parent.element, e) < 0 ? parent.right : parent.left;
+        }
+        if (STATS) stats.depthOffset = from;
+        if (compare(parent.element, e) < 0) parent.right = splay(parent.right, e);
+        else parent.left = splay(parent.left, e);
+        if (STATS) stats.depthOffset = 0;
     }
 
-    // Perform a left rotation of the given node U and its right child V
-    // This makes V the parent node and U the left child of V.
-    // Subtrees and sizes have to be updated appropriately.
-    // NOTE: Since the two nodes are not swapped. U points to the same node which is now 
-    //       the content of V.  So, conceptually, U now points to what V was.
-    // NOTE: REPAIR PLEASE (see note in method)
-    void rotateLeft(TreeNode<E> u) {
-        TreeNode<E> v = u.right;
-        assert(v != null);  // This should not be called if u has no right child
-        
-        // Rather than move u and v, we shall swap contents (no need to adjust u's parent!)
-        E temp = u.element;
-        u.element = v.element;
-        v.element = temp;
-
-        // Adjust the left/right children to perform the rotation
-        u.right = v.right;
-        if (u.right != null) u.right.parent = u;
-        v.right = v.left;
-        v.left = u.left;
-        if (v.left != null) v.left.parent = v;
-        u.left = v;
-        v.parent = u;
-
-        // NOTE: REPAIR PLEASE. SIZE IS NOT UPDATED
-        // The only two node's whose sizes changed as a result of rotation are u and v
-        // u's size remains the same
-        // v's size can just be computed
-        if(v.left != null && v.right != null){
-            v.size = 1 + v.left.size + v.right.size;
-        }else if(v.right != null){
-            v.size = 1 + v.right.size;
-        }else if(v.left != null){
-            v.size = 1 + v.left.size;
-        }else{
-            v.size =  1;
-        }
-
-        // if(u.left != null && u.right != null){
-        //     u.size = 1 + u.left.size + u.right.size;
-        // }else if(u.right != null){
-        //     u.size = 1 + u.right.size;
-        // }else if(u.left != null){
-        //     u.size = 1 + u.left.size;
-        // }else{
-        //     u.size =  1;
-        // }
-    }
-
-    // Perform a right rotation of the given node U and its left child V
-    // This makes V the parent node and U the right child of V.
-    // Subtrees and sizes have to be updated appropriately.
-    // NOTE: Since the two nodes are not swapped. U points to the same node which is now
-    //       the content of V. So, conceptually, U now points to what V was.
-    // NOTE: REPAIR PLEASE (see note in method)
-    void rotateRight(TreeNode<E> u) {
-        TreeNode<E> v = u.left;
-        assert (v != null); // This should not be called if u has no right child
-
-        // Rather than move u and v, we shall swap contents (no need to adjust u's
-        // parent!)
-        E temp = u.element;
-        u.element = v.element;
-        v.element = temp;
-
-        // Adjust the left/right children to perform the rotation
-        u.left = v.left;
-        if (u.left != null) u.left.parent = u;
-        v.left = v.right;
-        v.right = u.right;
-        if (v.right != null) v.right.parent = v;
-        u.right = v;
-        v.parent = u;
-
-        // NOTE: REPAIR PLEASE. SIZE IS NOT UPDATED
-        // The only two node's whose sizes changed as a result of rotation are u and v
-        // u's size remains the same
-        // v's size can just be computed
-        if(v.left != null && v.right != null){
-            v.size = 1 + v.left.size + v.right.size;
-        }else if(v.right != null){
-            v.size = 1 + v.right.size;
-        }else if(v.left != null){
-            v.size = 1 + v.left.size;
-        }else{
-            v.size = 1;
-        }
-
-        // if(u.left != null && u.right != null){
-        //     u.size = 1 + u.left.size + u.right.size;
-        // }else if(u.right != null){
-        //     u.size = 1 + u.right.size;
-        // }else if(u.left != null){
-        //     u.size = 1 + u.left.size;
-        // }else{
-        //     u.size =  1;
-        // }
-
-    }
-
-    // Perform a splay of the current node all the way to the root
-    void splay(TreeNode<E> current) {
-        while (current.parent != null) {
-            // Are we a left child of parent?
-            boolean leftChild = current.parent.left == current;
-            if (current.parent.parent == null) {
-                // Just a zig
-                current = current.parent;
-                if (leftChild) rotateRight(current);
-                else rotateLeft(current);
+    // Bottom-up semi-splay (Sleator and Tarjan) of the node at depth on the
+    // search path for e in the subtree at t. A zig-zig step rotates only the
+    // parent over the grandparent and carries on from the parent; a zig-zag step
+    // is the same as in a splay and carries on from the node; a final zig rotates
+    // the node over the root. Each node on the path moves about halfway up, for
+    // fewer rotations than a splay with the same amortized bounds.
+    // Returns the new root of the subtree (whose total size is unchanged).
+    TreeNode<E> semiSplay(TreeNode<E> t, E e, int depth) {
+        if (depth >= path.length) path = Arrays.copyOf(path, Math.max(depth + 1, 2 * path.length));
+        path[0] = t;
+        for (int d = 1; d <= depth; d++) {
+            TreeNode<E> above = path[d - 1];
+            path[d] = compare(above.element, e) < 0 ? above.right : above.left;
+        }
+
+        int rotations = 0;
+        int i = depth;  // Depth of x, the node being moved up
+        while (i >= 1) {
+            TreeNode<E> x = path[i];
+            TreeNode<E> y = path[i - 1];
+            TreeNode<E> top;  // What takes the place of the highest node rotated
+            int above;        // Depth of that place
+            if (i == 1) {
+                // Zig: y is the root
+                rotateUp(x, y);
+                top = x;
+                above = 0;
+                rotations++;
             } else {
-                // Is our parent a left child?
-                boolean leftGrandChild = current.parent.parent.left == current.parent;
-                if (leftChild && leftGrandChild) {
-                    // Zig-zig (down left side)
-                    rotateRight(current.parent.parent);
-                    current = current.parent;
-                    rotateRight(current);
-                } else if (!leftChild && !leftGrandChild) {
-                    // Zig-zig (down right side)
-                    rotateLeft(current.parent.parent);
-                    current = current.parent;
-                    rotateLeft(current);
-                } else if (leftChild) {
-                    // Zig-zag right/left
-                    current = current.parent;
-                    rotateRight(current);
-                    current = current.parent;
-                    rotateLeft(current);  // Our grandparent is now our parent
+                TreeNode<E> z = path[i - 2];
+                if ((y.left == x) == (z.left == y)) {
+                    // Zig-zig: rotate y over z only, and carry on from y
+                    rotateUp(y, z);
+                    top = y;
+                    rotations++;
                 } else {
-                    // Zig-zag left/right
-                    current = current.parent;
-                    rotateLeft(current);
-                    current = current.parent;
-                    rotateRight(current);
+                    // Zig-zag: rotate x over y, then over z
+                    rotateUp(x, y);
+                    if (z.left == y) z.left = x;
+                    else z.right = x;
+                    rotateUp(x, z);
+                    top = x;
+                    rotations += 2;
                 }
+                above = i - 2;
+            }
+            if (above == 0) {
+                t = top;
+            } else {
+                TreeNode<E> parent = path[above - 1];
+                if (parent.left == path[above]) parent.left = top;
+                else parent.right = top;
             }
+            path[above] = top;
+            i = above;
+        }
+        Arrays.fill(path, 0, depth + 1, null);  // Do not keep deleted nodes reachable
+        if (STATS) stats.recordDescent(depth, rotations);
+        return t;
+    }
+
+    // Rotate child (a child of parent) up over parent, leaving the caller to
+    // link child where parent was. Fixes both sizes; their total is unchanged.
+    static <E> void rotateUp(TreeNode<E> child, TreeNode<E> parent) {
+        if (parent.left == child) {
+            parent.left = child.right;
+            child.right = parent;
+        } else {
+            parent.right = child.left;
+            child.left = parent;
+        }
+        child.size = parent.size;
+        parent.size = size(parent.left) + size(parent.right) + parent.count;
+    }
+
+    // Top-down splay of the subtree at t for element e
+    // Returns the new root of the subtree: the node holding e, or if e is not
+    // present, the last node on its search path (its predecessor or successor).
+    // The subtree keeps the same set of nodes, so its total size is unchanged.
+    TreeNode<E> splay(TreeNode<E> t, E e) {
+        TreeNode<E> l = header;  // Largest node of the left tree (all < e)
+        TreeNode<E> r = header;  // Smallest node of the right tree (all > e)
+        int leftSize = 0;        // Number of elements linked into the left tree
+        int rightSize = 0;       // Number of elements linked into the right tree
+        int links = 0;           // Nodes linked into the left and right trees
+        int rotations = 0;       // Zig-zig rotations performed
+        header.left = header.right = null;
+
+        while (true) {
+            int comp = compare(t.element, e);
+            if (comp > 0) {
+                // Element e lies to the left
+                if (t.left == null) break;
+                if (compare(t.left.element, e) > 0) {
+                    // Zig-zig: rotate right first
+                    TreeNode<E> y = t.left;
+                    t.left = y.right;
+                    y.right = t;
+                    t.size = size(t.left) + size(t.right) + t.count;
+                    t = y;
+                    rotations++;
+                    if (t.left == null) break;
+                }
+                // Link t (with its right subtree) onto the right tree
+                r.left = t;
+                r = t;
+                links++;
+                t = t.left;
+                rightSize += size(r.right) + r.count;
+            } else if (comp < 0) {
+                // Element e lies to the right
+                if (t.right == null) break;
+                if (compare(t.right.element, e) < 0) {
+                    // Zig-zig: rotate left first
+                    TreeNode<E> y = t.right;
+                    t.right = y.left;
+                    y.left = t;
+                    t.size = size(t.left) + size(t.right) + t.count;
+                    t = y;
+                    rotations++;
+                    if (t.right == null) break;
+                }
+                // Link t (with its left subtree) onto the left tree
+                l.right = t;
+                l = t;
+                links++;
+                t = t.right;
+                leftSize += size(l.left) + l.count;
+            } else {
+                // Found the element
+                break;
+            }
+        }
+        if (STATS) stats.recordDescent(links + rotations, links + rotations);
+        return reassemble(t, l, r, leftSize, rightSize);
+    }
+
+    // Top-down splay of the subtree at t for its k-th smallest node (0-based)
+    // Assumes 0 <= k < size(t). Returns that node as the new root of the subtree.
+    TreeNode<E> splayRank(TreeNode<E> t, int k) {
+        TreeNode<E> l = header;  // Largest node of the left tree
+        TreeNode<E> r = header;  // Smallest node of the right tree
+        int leftSize = 0;        // Number of elements linked into the left tree
+        int rightSize = 0;       // Number of elements linked into the right tree
+        int links = 0;           // Nodes linked into the left and right trees
+        int rotations = 0;       // Zig-zig rotations performed
+        header.left = header.right = null;
+
+        // k is always the rank of the wanted element within t's subtree
+        // (t holds ranks leftCount .. leftCount + t.count - 1 of it)
+        while (true) {
+            int leftCount = size(t.left);
+            if (k < leftCount) {
+                // Wanted node lies to the left
+                TreeNode<E> y = t.left;
+                if (k < size(y.left)) {
+                    // Zig-zig: rotate right first (same subtree, so same rank)
+                    t.left = y.right;
+                    y.right = t;
+                    t.size = size(t.left) + size(t.right) + t.count;
+                    t = y;
+                    rotations++;
+                }
+                // Link t onto the right tree, nothing smaller is removed
+                r.left = t;
+                r = t;
+                links++;
+                t = t.left;
+                rightSize += size(r.right) + r.count;
+            } else if (k >= leftCount + t.count) {
+                // Wanted node lies to the right
+                TreeNode<E> y = t.right;
+                if (k - leftCount - t.count >= size(y.left) + y.count) {
+                    // Zig-zig: rotate left first
+                    t.right = y.left;
+                    y.left = t;
+                    t.size = size(t.left) + size(t.right) + t.count;
+                    t = y;
+                    rotations++;
+                }
+                // Link t onto the left tree, skipping it and its left subtree
+                l.right = t;
+                l = t;
+                links++;
+                k -= size(t.left) + t.count;
+                t = t.right;
+                leftSize += size(l.left) + l.count;
+            } else {
+                // Found the node
+                break;
+            }
+        }
+        if (STATS) stats.recordDescent(links + rotations, links + rotations);
+        return reassemble(t, l, r, leftSize, rightSize);
+    }
+
+    // Last step of a top-down splay: hang t's subtrees on the ends of the left
+    // tree (ending at l) and right tree (ending at r), fix their sizes and make
+    // t the root over both. leftSize/rightSize count what was linked into each.
+    TreeNode<E> reassemble(TreeNode<E> t, TreeNode<E> l, TreeNode<E> r, int leftSize, int rightSize) {
+        // Final sizes of the left and right trees once t's subtrees are moved over
+        leftSize += size(t.left);
+        rightSize += size(t.right);
+        t.size = leftSize + rightSize + t.count;
+
+        // Walk down the right spine of the left tree (and the left spine of the
+        // right tree) handing each node the size of everything still below it
+        l.right = r.left = null;
+        for (TreeNode<E> y = header.right; y != null; y = y.right) {
+            y.size = leftSize;
+            leftSize -= size(y.left) + y.count;
+        }
+        for (TreeNode<E> y = header.left; y != null; y = y.left) {
+            y.size = rightSize;
+            rightSize -= size(y.right) + y.count;
+        }
+
+        // Reassemble: t's subtrees go to the ends of the left/right trees
+        l.right = t.left;
+        r.left = t.right;
+        t.left = header.right;
+        t.right = header.left;
+        header.left = header.right = null;  // Do not hold onto any nodes
+        return t;
+    }
+
+    // Walks the elements of ranks [from, to) of a tree in order without splaying.
+    // Splits at the middle rank, so both halves are exactly the same size, and
+    // keeps the ancestors still to visit on an explicit stack, so a path-like
+    // tree cannot overflow the call stack.
+    static class TreeSpliterator<E> implements Spliterator<E> {
+        final SplayTree<E> tree;
+        int from;                       // Rank of the next element
+        final int to;                   // Rank just past the last element
+        ArrayDeque<TreeNode<E>> stack;  // Ancestors still to visit (null until started)
+        TreeNode<E> curr;               // Node holding the next element
+        int copies;                     // Copies of curr's element still to visit
+
+        TreeSpliterator(SplayTree<E> tree, int from, int to) {
+            this.tree = tree;
+            this.from = from;
+            this.to = to;
+        }
+
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (from >= to) return false;
+            if (stack == null) {
+                seek();
+            } else if (copies == 0) {
+                // Move on to the smallest node after curr
+                for (TreeNode<E> t = curr.right; t != null; t = t.left) stack.push(t);
+                curr = stack.pop();
+                copies = curr.count;
+            }
+            copies--;
+            from++;
+            action.accept(curr.element);
+            return true;
+        }
+
+        // Walk down to the node holding rank from, stacking the nodes passed on the left
+        void seek() {
+            stack = new ArrayDeque<>();
+            TreeNode<E> t = tree.root;
+            int k = from;
+            while (true) {
+                int leftCount = size(t.left);
+                if (k < leftCount) {
+                    stack.push(t);
+                    t = t.left;
+                } else if (k >= leftCount + t.count) {
+                    k -= leftCount + t.count;
+                    t = t.right;
+                } else {
+                    curr = t;
+                    copies = leftCount + t.count - k;
+                    return;
+                }
+            }
+        }
+
+        // Hand the first half of the ranks to a new spliterator (only before starting)
+        public Spliterator<E> trySplit() {
+            int mid = (from + to) >>> 1;
+            if (stack != null || mid == from) return null;
+            Spliterator<E> prefix = new TreeSpliterator<>(tree, from, mid);
+            from = mid;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return to - from;
+        }
+
+        public int characteristics() {
+            return ORDERED | SORTED | SIZED | SUBSIZED | (tree.multiset ? 0 : DISTINCT);
+        }
+
+        public Comparator<? super E> getComparator() {
+            return tree.comparator == NATURAL_ORDER ? null : tree.comparator;
+        }
+    }
+
+    // Combines the sorted elements pivots[lo..hi) (with their counts) of one tree
+    // with the subtree t of the other by a union, intersection or difference.
+    // The middle pivot splits t and the halves on either side are combined
+    // recursively, the left half as a separate task while there are enough
+    // pivots to be worth it.
+    static class SetOperation<E> extends RecursiveTask<TreeNode<E>> {
+        static final int UNION = 0;
+        static final int INTERSECTION = 1;
+        static final int DIFFERENCE = 2;
+        static final int FORK_THRESHOLD = 2048;  // Fewer pivots than this are done in this task
+        private static final long serialVersionUID = 1L;
+
+        final SplayTree<E> tree;       // The tree getting the result (for its ordering)
+        final int op;
+        final boolean pivotsAreThis;   // Whether the pivots or t come from tree
+        final Object[] pivots;
+        final int[] counts;
+        final int lo, hi;
+        final TreeNode<E> t;
+
+        SetOperation(SplayTree<E> tree, int op, boolean pivotsAreThis, Object[] pivots, int[] counts, int lo, int hi, TreeNode<E> t) {
+            this.tree = tree;
+            this.op = op;
+            this.pivotsAreThis = pivotsAreThis;
+            this.pivots = pivots;
+            this.counts = counts;
+            this.lo = lo;
+            this.hi = hi;
+            this.t = t;
+        }
+
+        protected TreeNode<E> compute() {
+            return combine(lo, hi, t);
+        }
+
+        // The result of combining pivots[lo..hi) with the subtree at t
+        TreeNode<E> combine(int lo, int hi, TreeNode<E> t) {
+            if (lo >= hi) {
+                // Only t is left: keep it unless nothing of the tree side survives
+                return count(0, 1) > 0 ? t : null;
+            }
+            if (t == null) {
+                // Only pivots are left
+                return count(1, 0) > 0 ? tree.build(pivots, counts, lo, hi) : null;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            @SuppressWarnings("unchecked")
+            TreeNode<E>[] parts = (TreeNode<E>[]) new TreeNode<?>[3];
+            E pivot = SplayTree.elementAt(pivots, mid);
+            tree.splitSubtree(t, pivot, parts);
+            TreeNode<E> left, right;
+            if (hi - lo > FORK_THRESHOLD) {
+                SetOperation<E> leftTask = new SetOperation<>(tree, op, pivotsAreThis, pivots, counts, lo, mid, parts[0]);
+                leftTask.fork();
+                right = combine(mid + 1, hi, parts[2]);
+                left = leftTask.join();
+            } else {
+                left = combine(lo, mid, parts[0]);
+                right = combine(mid + 1, hi, parts[2]);
+            }
+
+            TreeNode<E> node = parts[1];
+            int count = count(counts[mid], node == null ? 0 : node.count);
+            if (count <= 0) return tree.concat(left, right);
+            if (node == null) node = new TreeNode<>(pivot);
+            node.count = count;
+            node.left = left;
+            node.right = right;
+            node.size = size(left) + count + size(right);
+            return node;
+        }
+
+        // Copies of an element in the result, given its copies among the pivots and in t
+        int count(int pivotCount, int treeCount) {
+            int thisCount = pivotsAreThis ? pivotCount : treeCount;
+            int otherCount = pivotsAreThis ? treeCount : pivotCount;
+            int count;
+            if (op == UNION) count = thisCount + otherCount;
+            else if (op == INTERSECTION) count = Math.min(thisCount, otherCount);
+            else count = thisCount - otherCount;
+            return tree.multiset ? count : Math.min(count, 1);
         }
     }
 }
@@ -0,0 +1,73 @@
+/****************
+ * Splay Tree Cursor
+ * Spring 2024
+ *
+ * A finger into a SplayTree for scans and other local access patterns: it
+ * sits on one element and moves to the next or previous one, or seeks to any
+ * other. Every move splays its target to the root, so the next search starts
+ * from the finger. By the dynamic finger property of splay trees, a move to
+ * an element d places away then costs O(log d) amortized instead of
+ * O(log n), and a whole scan O(1) per step.
+ *
+ * NOTE:
+ * The cursor remembers its element, not a node, so changes to the tree never
+ * invalidate it: after the element is deleted (through the cursor or not),
+ * next and prev still move to its neighbours. Moves always splay fully,
+ * whatever SplayPolicy the tree uses, since the finger property depends on it.
+ *
+ * After moving past either end the cursor is on no element (get returns null)
+ * until the next seek.
+ */
+public class SplayTreeCursor<E> {
+    final SplayTree<E> tree;
+    E current;  // The element the cursor is on (null if none)
+
+    SplayTreeCursor(SplayTree<E> tree) {
+        this.tree = tree;
+    }
+
+    // The element the cursor is on (null if it is on none)
+    public E get() {
+        return current;
+    }
+
+    // Move to the next larger element and return it (null if there is none)
+    public E next() {
+        if (current != null) current = tree.splayClosest(current, false, false);
+        return current;
+    }
+
+    // Move to the next smaller element and return it (null if there is none)
+    public E prev() {
+        if (current != null) current = tree.splayClosest(current, true, false);
+        return current;
+    }
+
+    // Move to the smallest element >= e and return it (null if there is none)
+    public E seek(E e) {
+        current = tree.splayClosest(e, false, true);
+        return current;
+    }
+
+    // Insert e into the tree and move onto it (e.g. to append just above the
+    // previous element)
+    public void insert(E e) {
+        tree.insert(e);
+        current = e;
+    }
+
+    // Delete the element the cursor is on, leaving the cursor between its
+    // neighbours (so next and prev still work). Returns false if it was on none.
+    public boolean delete() {
+        return current != null && tree.delete(current);
+    }
+
+    // How many elements are smaller than the cursor's element
+    // Just the size of the root's left subtree while it is still the root.
+    public int rank() {
+        if (current == null) throw new IllegalStateException("Cursor is not on an element");
+        SplayTree.TreeNode<E> root = tree.root;
+        if (root != null && tree.compare(root.element, current) == 0) return SplayTree.size(root.left);
+        return tree.countLessThan(current, false, false);
+    }
+}
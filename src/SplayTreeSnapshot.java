@@ -0,0 +1,139 @@
+/****************
+ * Splay Tree Snapshot
+ * Spring 2024
+ *
+ * An immutable copy of a SplayTree's contents as sorted arrays, answering
+ * rangeCount, rank and select by binary search. Since nothing is splayed, any
+ * number of threads can query one snapshot at once without locking; the price
+ * is that it does not see changes made to the tree after it was taken.
+ *
+ * NOTE:
+ * keys holds the distinct elements and before[i] how many elements (counting
+ * every copy, in a multiset) come before keys[i], so a search for the first
+ * key at or past e gives the rank of e directly.
+ *
+ * The arrays are either in sorted order, searched with a loop whose only
+ * branch is the loop test (the comparison result just picks how far to move),
+ * or in Eytzinger (BFS) order: slot 1 is the middle key and the children of
+ * slot k are slots 2k and 2k+1. A search then walks down the slots, and the
+ * first few levels stay in cache for every search. In both layouts the slot
+ * past the last key (before[n] when sorted, before[0] in Eytzinger order)
+ * holds the total size.
+ */
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class SplayTreeSnapshot<E> {
+    final Comparator<? super E> comparator;
+    final Object[] keys;
+    final int[] before;
+    final int n;               // Number of distinct keys
+    final boolean eytzinger;
+    final long createdNanos;   // System.nanoTime() when the snapshot was taken
+
+    // Snapshot of the n sorted distinct elements with the given counts
+    SplayTreeSnapshot(Comparator<? super E> comparator, Object[] sorted, int[] counts, int n, boolean eytzinger) {
+        this.comparator = comparator;
+        this.n = n;
+        this.eytzinger = eytzinger;
+        int[] sortedBefore = new int[n + 1];
+        for (int i = 0; i < n; i++) sortedBefore[i + 1] = sortedBefore[i] + counts[i];
+        if (eytzinger) {
+            keys = new Object[n + 1];
+            before = new int[n + 1];
+            before[0] = sortedBefore[n];
+            fill(sorted, sortedBefore, 0, 1);
+        } else {
+            keys = sorted.length == n ? sorted : Arrays.copyOf(sorted, n);
+            before = sortedBefore;
+        }
+        createdNanos = System.nanoTime();
+    }
+
+    // Number of elements in the snapshot
+    public int size() {
+        return eytzinger ? before[0] : before[n];
+    }
+
+    // True if the snapshot holds e
+    public boolean contains(E e) {
+        return countLessThan(e, true) != countLessThan(e, false);
+    }
+
+    // Returns how many elements are between a (inclusive) and b (inclusive)
+    public int rangeCount(E a, E b) {
+        return Math.max(0, countLessThan(b, true) - countLessThan(a, false));
+    }
+
+    // Returns how many elements are strictly less than e
+    public int rank(E e) {
+        return countLessThan(e, false);
+    }
+
+    // Returns the k-th smallest element (k = 0 is the smallest)
+    public E select(int k) {
+        if (k < 0 || k >= size()) throw new IndexOutOfBoundsException("k = " + k + ", size = " + size());
+        if (eytzinger) {
+            // The last slot on the way down with before <= k holds the element
+            int found = 0;
+            for (int slot = 1; slot <= n; ) {
+                if (before[slot] <= k) {
+                    found = slot;
+                    slot = 2 * slot + 1;
+                } else {
+                    slot = 2 * slot;
+                }
+            }
+            return SplayTree.elementAt(keys, found);
+        }
+        if (n == size()) return SplayTree.elementAt(keys, k);  // A set: ranks are indices
+        int lo = 0, hi = n - 1;  // Last index with before <= k
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (before[mid] <= k) lo = mid;
+            else hi = mid - 1;
+        }
+        return SplayTree.elementAt(keys, lo);
+    }
+
+    // Age of the snapshot in nanoseconds
+    public long ageNanos() {
+        return System.nanoTime() - createdNanos;
+    }
+
+    // *************************************
+    // Helper functions
+    // *************************************
+    // Returns how many elements are less than e (or equal to it, if inclusive)
+    int countLessThan(E e, boolean inclusive) {
+        int limit = inclusive ? 1 : 0;  // Keys comparing below this are counted
+        if (eytzinger) {
+            int slot = 1;
+            while (slot <= n) slot = 2 * slot + (comparator.compare(SplayTree.elementAt(keys, slot), e) < limit ? 1 : 0);
+            // Strip the trailing right turns (and the one left turn before them)
+            // to get back to the first key not counted (0 if there is none)
+            slot >>>= Integer.numberOfTrailingZeros(~slot) + 1;
+            return before[slot];
+        }
+        if (n == 0) return 0;
+        int base = 0;
+        int len = n;
+        while (len > 1) {
+            int half = len >>> 1;
+            base += comparator.compare(SplayTree.elementAt(keys, base + half - 1), e) < limit ? half : 0;
+            len -= half;
+        }
+        base += comparator.compare(SplayTree.elementAt(keys, base), e) < limit ? 1 : 0;
+        return before[base];
+    }
+
+    // Place sorted[i..] into the Eytzinger subtree at slot (in order)
+    // Returns the index of the next sorted element to place.
+    int fill(Object[] sorted, int[] sortedBefore, int i, int slot) {
+        if (slot > n) return i;
+        i = fill(sorted, sortedBefore, i, 2 * slot);
+        keys[slot] = sorted[i];
+        before[slot] = sortedBefore[i];
+        return fill(sorted, sortedBefore, i + 1, 2 * slot + 1);
+    }
+}
@@ -0,0 +1,138 @@
+/****************
+ * Splay Tree Stats
+ * Spring 2024
+ *
+ * Counts what a SplayTree does: how many operations of each kind, how deep
+ * each walk down the tree went, and how many rotations the splays performed.
+ * A top-down splay restructures the tree by zig-zig rotations and by linking
+ * nodes into its left and right trees (the zig and zag steps), so both count
+ * as rotations here; a walk that does not splay performs none.
+ * A growing share of deep walks (or of rotations per operation) shows an access
+ * pattern pushing the tree towards long O(n) paths.
+ *
+ * NOTE:
+ * Statistics are off unless the JVM runs with -Dsplaytree.stats=true (see
+ * SplayTree.STATS); a tree then has one of these, available from stats().
+ * The counters are plain fields updated by the thread using the tree, so values
+ * read from another thread (e.g. over JMX) may be slightly out of date.
+ */
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class SplayTreeStats implements SplayTreeStatsMBean {
+    static final int DEPTH_BUCKETS = 64;  // Depths 0..62 each get a bucket, 63+ share the last
+    static final int RECENT_DESCENTS = 1024;  // Descents per window of getRecentMaxDepth
+
+    final SplayTree<?> tree;
+    long inserts;
+    long deletes;
+    long rangeCounts;
+    long queries;
+    long descents;
+    long rotations;
+    long totalDepth;
+    int maxDepth;
+    int recentMaxDepth;  // Deepest descent in the last full window of RECENT_DESCENTS
+    int windowMaxDepth;  // Deepest descent so far in the current window
+    int windowDescents;  // Descents so far in the current window
+    int depthOffset;  // Depth of the subtree being splayed, added to its descents (see SplayTree.afterRead)
+    final long[] depthHistogram = new long[DEPTH_BUCKETS];
+
+    SplayTreeStats(SplayTree<?> tree) {
+        this.tree = tree;
+    }
+
+    // Publish these statistics to the platform MBean server as
+    // SplayTree:type=SplayTreeStats,name=<name>
+    public void register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("SplayTree:type=SplayTreeStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    }
+
+    // A walk down the tree reached the given depth, performing some rotations
+    void recordDescent(int depth, int rotations) {
+        depth += depthOffset;
+        descents++;
+        this.rotations += rotations;
+        totalDepth += depth;
+        if (depth > maxDepth) maxDepth = depth;
+        if (depth > windowMaxDepth) windowMaxDepth = depth;
+        if (++windowDescents == RECENT_DESCENTS) {
+            recentMaxDepth = windowMaxDepth;
+            windowMaxDepth = windowDescents = 0;
+        }
+        depthHistogram[Math.min(depth, DEPTH_BUCKETS - 1)]++;
+    }
+
+    public long getInserts() {
+        return inserts;
+    }
+
+    public long getDeletes() {
+        return deletes;
+    }
+
+    public long getRangeCounts() {
+        return rangeCounts;
+    }
+
+    public long getQueries() {
+        return queries;
+    }
+
+    public long getOperations() {
+        return inserts + deletes + rangeCounts + queries;
+    }
+
+    public long getDescents() {
+        return descents;
+    }
+
+    public long getRotations() {
+        return rotations;
+    }
+
+    public double getRotationsPerOperation() {
+        long operations = getOperations();
+        return operations == 0 ? 0 : (double) rotations / operations;
+    }
+
+    public double getMeanDepth() {
+        return descents == 0 ? 0 : (double) totalDepth / descents;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getDepthP99() {
+        long wanted = (long) Math.ceil(descents * 0.99);
+        long seen = 0;
+        for (int depth = 0; depth < DEPTH_BUCKETS; depth++) {
+            seen += depthHistogram[depth];
+            if (seen >= wanted && seen > 0) return depth;
+        }
+        return 0;
+    }
+
+    public long[] getDepthHistogram() {
+        return depthHistogram.clone();
+    }
+
+    public int getSize() {
+        return tree.size();
+    }
+
+    public int getRecentMaxDepth() {
+        return Math.max(recentMaxDepth, windowMaxDepth);
+    }
+
+    public void reset() {
+        inserts = deletes = rangeCounts = queries = 0;
+        descents = rotations = totalDepth = 0;
+        maxDepth = recentMaxDepth = windowMaxDepth = windowDescents = 0;
+        Arrays.fill(depthHistogram, 0);
+    }
+}
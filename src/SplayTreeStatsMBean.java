@@ -0,0 +1,47 @@
+/****************
+ * Splay Tree Stats MBean
+ * Spring 2024
+ *
+ * The management interface of SplayTreeStats, so a tree's statistics can be
+ * watched (and alerted on) over JMX.
+ */
+public interface SplayTreeStatsMBean {
+    long getInserts();
+
+    long getDeletes();
+
+    long getRangeCounts();
+
+    // Reads other than rangeCount (contains, rank, select, floor, ...)
+    long getQueries();
+
+    // Inserts, deletes, range counts and queries together
+    long getOperations();
+
+    // Walks down the tree (splays and, under a lazier splay policy, plain descents)
+    long getDescents();
+
+    // Zig-zig rotations and zig/zag links performed by the splays
+    long getRotations();
+
+    double getRotationsPerOperation();
+
+    double getMeanDepth();
+
+    int getMaxDepth();
+
+    int getDepthP99();
+
+    // Number of descents that went to each depth (the last bucket counts every
+    // descent at least that deep)
+    long[] getDepthHistogram();
+
+    int getSize();
+
+    // Deepest descent among the last RECENT_DESCENTS or so: a cheap lower bound
+    // on the tree's current height, which maxDepth only bounds over all time
+    // (the height itself would take a walk of the whole tree to find)
+    int getRecentMaxDepth();
+
+    void reset();
+}
@@ -8,43 +8,66 @@
  * deletes some entries, then performs a range count.
  * 
  * Then there are some larger queries with simple to compute ranges (with the set known)
- * The larger ones can be used to test efficiency.
- * The 1_000_000 entry ones will take a little time but if done efficiently should still
- * finish in about a minute if not sooner.
+ * Performance at 1_000_000 entries and beyond is measured by the JMH benchmarks
+ * in jmh (splaytree.jmh.SplayTreeBenchmark).
  */
 import java.util.Random;
 import java.util.Collections;
 import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class SplayTreeTester {
     static Random rand;
 
     public static void main(String[] args) {
+        // Statistics are switched on or off once, when SplayTree is loaded, so turn
+        // them on before the first tree (unless told not to) for testStats to check
+        if (System.getProperty("splaytree.stats") == null) System.setProperty("splaytree.stats", "true");
         rand = new Random();
 
         testBasic();
+        testStructure(2_000);
+        testPrimitive(10_000);
+        testComparator();
+        testOrderStatistics(2_000);
+        testBulkLoad(5_000);
+        testSplitJoin(2_000);
+        testSharded(4, 50_000);
+        testSplayPolicies(2_000);
+        testStats();
+        testAggregate(3_000);
+        testRangeCountAll(5_000, 2_000);
+        testSnapshot(10_000);
+        testMultiset(3_000);
+        testNodePool(2_000);
+        testWindow(3_000);
+        testIteration(100_000);
+        testSnapshotIndex(3_000);
+        testSetOperations(50_000);
+        testBytes(20_000);
+        testCursor(20_000);
 
         testInsertOnly(100, 10, true);
         testInsertOnly(1_000, 1_000, true);
-
-        if (false) {
-            // Only test these if you are ready to test performance as well
-            testInsertOnly(1_000_000, 1_000, false);
-            testInsertOnly(1_000_000, 1_000, true);
-            testInsertOnly(1_000_000, 1_000_000, false);
-            testInsertOnly(1_000_000, 1_000_000, true);
-        }
+        testInsertOnly(1_000, 1_000, false);
 
         testInsertDelete(100, 10, true);
         testInsertDelete(1_000, 1_000, true);
-
-        if (false) {
-            // Only test these if you are ready to test performance as well
-            testInsertDelete(1_000_000, 1_000, false);
-            testInsertDelete(1_000_000, 1_000, true);
-            testInsertDelete(1_000_000, 1_000_000, false);
-            testInsertDelete(1_000_000, 1_000_000, true);
-        }
+        testInsertDelete(1_000, 1_000, false);
     }
 
     public static void testInsertOnly(int numElements, int numRanges, boolean randomOrder) {
@@ -161,4 +184,997 @@ public class SplayTreeTester {
         }
         // tree.printTree(System.out); // Uncomment for some debugging if needed
     }    
+
+    // Randomly insert and delete elements, checking after every operation that the
+    // tree is still ordered and that every size field is correct.
+    static void testStructure(int numOps) {
+        System.out.println("Testing structure (size fields and ordering) over " + numOps + " operations.");
+        SplayTree<Integer> tree = new SplayTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < numOps; i++) {
+            int e = rand.nextInt(numOps / 4 + 1);
+            int op = rand.nextInt(4);
+            if (op == 0) {
+                if (tree.delete(e) != expected.remove(e)) {
+                    System.out.println("Error: delete(" + e + ") reported the wrong result. Aborting.");
+                    System.exit(1);
+                }
+            } else if (op == 1) {
+                int b = e + rand.nextInt(numOps / 8 + 1);
+                if (tree.rangeCount(e, b) != expected.subSet(e, true, b, true).size()) {
+                    System.out.println("Error: rangeCount(" + e + ", " + b + ") is wrong. Aborting.");
+                    System.exit(1);
+                }
+            } else {
+                tree.insert(e);
+                expected.add(e);
+            }
+            if (checkSizes(tree.root, null, null) != expected.size()) {
+                System.out.println("Error: Tree has wrong size after operation " + i + ". Aborting.");
+                tree.printTree(System.out);
+                System.exit(1);
+            }
+        }
+    }
+
+    // Returns the number of elements under node, checking each node's size field
+    // and that every element lies strictly between low and high (null = unbounded)
+    static int checkSizes(SplayTree.TreeNode<Integer> node, Integer low, Integer high) {
+        if (node == null) return 0;
+        if ((low != null && node.element <= low) || (high != null && node.element >= high)) {
+            System.out.println("Error: Element " + node.element + " is out of order. Aborting.");
+            System.exit(1);
+        }
+        int total = checkSizes(node.left, low, node.element) + node.count + checkSizes(node.right, node.element, high);
+        if (node.size != total) {
+            System.out.println("Error: Node " + node.element + " has size " + node.size + " but " + total + " was expected. Aborting.");
+            System.exit(1);
+        }
+        return total;
+    }
+
+    // Run the same random inserts, deletes and range counts against the int,
+    // long and off-heap trees and a TreeSet, checking that they always agree.
+    static void testPrimitive(int numOps) {
+        System.out.println("Testing primitive int/long/off-heap trees over " + numOps + " operations.");
+        IntSplayTree intTree = new IntSplayTree();
+        LongSplayTree longTree = new LongSplayTree(0);
+        OffHeapLongSplayTree offHeapTree = new OffHeapLongSplayTree(4);  // Small chunks, so many of them
+        TreeSet<Integer> expected = new TreeSet<>();
+        int range = numOps / 2;
+        for (int i = 0; i < numOps; i++) {
+            int e = rand.nextInt(range) - range / 2;
+            int op = rand.nextInt(4);
+            if (op == 0) {
+                boolean deleted = expected.remove(e);
+                if (intTree.delete(e) != deleted || longTree.delete(e) != deleted || offHeapTree.delete(e) != deleted) {
+                    System.out.println("Error: delete(" + e + ") reported the wrong result. Aborting.");
+                    System.exit(1);
+                }
+            } else if (op == 1) {
+                int b = e + rand.nextInt(range / 4 + 1);
+                int count = expected.subSet(e, true, b, true).size();
+                if (intTree.rangeCount(e, b) != count || longTree.rangeCount(e, b) != count
+                        || offHeapTree.rangeCount(e, b) != count || offHeapTree.contains(e) != expected.contains(e)) {
+                    System.out.println("Error: rangeCount(" + e + ", " + b + ") did not return " + count + ". Aborting.");
+                    System.exit(1);
+                }
+            } else {
+                intTree.insert(e);
+                longTree.insert(e);
+                offHeapTree.insert(e);
+                expected.add(e);
+            }
+            if (intTree.size() != expected.size() || longTree.size() != expected.size() || offHeapTree.size() != expected.size()) {
+                System.out.println("Error: Primitive tree has wrong size after operation " + i + ". Aborting.");
+                System.exit(1);
+            }
+        }
+    }
+
+    // A tree built with a reversed comparator should count ranges in that order,
+    // a comparator lets elements which are not Comparable be stored, and
+    // natural-order trees of different key types can be used side by side
+    static void testComparator() {
+        System.out.println("Testing comparators.");
+        SplayTree<String> tree = new SplayTree<>(Comparator.reverseOrder());
+        for (String s : new String[] {"apple", "kiwi", "banana", "fig", "cherry", "date"}) {
+            tree.insert(s);
+        }
+        int res = tree.rangeCount("fig", "banana"); // fig, date, cherry, banana
+        if (res != 4) {
+            System.out.println("Error: Tree returned " + res + " but 4 was expected. Aborting!");
+            System.exit(1);
+        }
+
+        Comparator<int[]> byFirst = Comparator.comparingInt(a -> a[0]);
+        SplayTree<int[]> arrays = new SplayTree<>(byFirst);
+        for (int i = 0; i < 100; i++) arrays.insert(new int[] {(i * 37) % 100, i});
+        SplayTree<Integer> ints = new SplayTree<>();
+        SplayTree<String> strings = new SplayTree<>();
+        for (int i = 0; i < 100; i++) {
+            ints.insert(i);
+            strings.insert(String.valueOf((char) ('a' + i % 26)));
+        }
+        boolean rejectedNull = false;
+        try {
+            new SplayTree<Integer>(null);
+        } catch (NullPointerException e) {
+            rejectedNull = true;
+        }
+        if (arrays.comparator() != byFirst || arrays.rangeCount(new int[] {10}, new int[] {19}) != 10
+                || ints.rangeCount(10, 19) != 10 || strings.rangeCount("b", "e") != 4 || !rejectedNull) {
+            System.out.println("Error: Comparator trees are wrong. Aborting!");
+            System.exit(1);
+        }
+    }
+
+    // Compare select, rank, floor/ceiling/higher/lower and quantile against a TreeSet
+    static void testOrderStatistics(int numElements) {
+        System.out.println("Testing order statistics (n=" + numElements + ")");
+        SplayTree<Integer> tree = new SplayTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < numElements; i++) {
+            int e = rand.nextInt(numElements * 4);
+            tree.insert(e);
+            expected.add(e);
+        }
+        ArrayList<Integer> sorted = new ArrayList<>(expected);
+        for (int i = 0; i < numElements; i++) {
+            int k = rand.nextInt(sorted.size());
+            int e = rand.nextInt(numElements * 4 + 2) - 1;
+            boolean ok = tree.select(k).equals(sorted.get(k))
+                && tree.rank(e) == expected.headSet(e).size()
+                && Objects.equals(tree.floor(e), expected.floor(e))
+                && Objects.equals(tree.ceiling(e), expected.ceiling(e))
+                && Objects.equals(tree.higher(e), expected.higher(e))
+                && Objects.equals(tree.lower(e), expected.lower(e));
+            if (!ok) {
+                System.out.println("Error: Order statistics disagree for k=" + k + " e=" + e + ". Aborting.");
+                System.exit(1);
+            }
+        }
+        checkSizes(tree.root, null, null);
+        if (!tree.quantile(0).equals(sorted.get(0)) || !tree.quantile(1).equals(sorted.get(sorted.size() - 1))
+                || !tree.quantile(0.5).equals(sorted.get((sorted.size() + 1) / 2 - 1))) {
+            System.out.println("Error: Quantiles are wrong. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Build trees in bulk (sorted, unsorted, and merging batches in) and check
+    // them against a TreeSet
+    static void testBulkLoad(int numElements) {
+        System.out.println("Testing bulk load (n=" + numElements + ")");
+        TreeSet<Integer> expected = new TreeSet<>();
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int i = 0; i < numElements; i++) {
+            int e = rand.nextInt(numElements * 2);
+            list.add(e);
+            expected.add(e);
+        }
+
+        SplayTree<Integer> sortedTree = new SplayTree<>();
+        sortedTree.buildFromSorted(new ArrayList<>(expected).iterator());
+        SplayTree<Integer> unsortedTree = new SplayTree<>();
+        unsortedTree.buildFrom(list);
+        checkBulk(sortedTree, expected);
+        checkBulk(unsortedTree, expected);
+
+        // A large batch (merged and rebuilt) then a small one (inserted one by one)
+        for (int batchSize : new int[] {numElements, 10}) {
+            ArrayList<Integer> batch = new ArrayList<>();
+            for (int i = 0; i < batchSize; i++) batch.add(rand.nextInt(numElements * 4));
+            sortedTree.insertAll(batch);
+            expected.addAll(batch);
+            checkBulk(sortedTree, expected);
+        }
+    }
+
+    static void checkBulk(SplayTree<Integer> tree, TreeSet<Integer> expected) {
+        if (checkSizes(tree.root, null, null) != expected.size()) {
+            System.out.println("Error: Bulk loaded tree has the wrong size. Aborting.");
+            System.exit(1);
+        }
+        int a = rand.nextInt(expected.last() + 1);
+        int b = a + rand.nextInt(expected.last() + 1);
+        if (tree.rangeCount(a, b) != expected.subSet(a, true, b, true).size()) {
+            System.out.println("Error: Bulk loaded tree has the wrong range count. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Split, join, and delete/extract ranges, checking against a TreeSet
+    static void testSplitJoin(int numElements) {
+        System.out.println("Testing split/join and range deletion (n=" + numElements + ")");
+        SplayTree<Integer> tree = new SplayTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < numElements; i++) {
+            int e = rand.nextInt(numElements * 4);
+            tree.insert(e);
+            expected.add(e);
+        }
+
+        // Split in two and join back together
+        int key = rand.nextInt(numElements * 4);
+        SplayTree<Integer> upper = tree.split(key);
+        if (checkSizes(tree.root, null, key) != expected.headSet(key).size()
+                || checkSizes(upper.root, key - 1, null) != expected.tailSet(key).size()) {
+            System.out.println("Error: split(" + key + ") gave the wrong halves. Aborting.");
+            System.exit(1);
+        }
+        try {
+            upper.join(tree);
+            System.out.println("Error: Joining overlapping trees did not fail. Aborting.");
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        SplayTree<Integer> mismatched = new SplayTree<>(SplayTree.NATURAL_ORDER, true);
+        mismatched.insert(Integer.MAX_VALUE);
+        try {
+            tree.join(mismatched);
+            System.out.println("Error: Joining a multiset onto a set did not fail. Aborting.");
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        mismatched = new SplayTree<>(Comparator.<Integer>naturalOrder());
+        mismatched.insert(Integer.MAX_VALUE);
+        try {
+            tree.join(mismatched);
+            System.out.println("Error: Joining trees with different comparators did not fail. Aborting.");
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        tree.join(upper);
+        if (checkSizes(tree.root, null, null) != expected.size() || upper.size() != 0) {
+            System.out.println("Error: join gave the wrong tree. Aborting.");
+            System.exit(1);
+        }
+
+        // Remove ranges until (almost) nothing is left
+        for (int i = 0; i < 20; i++) {
+            int a = rand.nextInt(numElements * 4);
+            int b = a + rand.nextInt(numElements);
+            SortedSet<Integer> range = expected.subSet(a, true, b, true);
+            int count = range.size();
+            int removed;
+            if (i % 2 == 0) {
+                removed = tree.deleteRange(a, b);
+            } else {
+                SplayTree<Integer> extracted = tree.extractRange(a, b);
+                removed = checkSizes(extracted.root, a - 1, b + 1);
+            }
+            range.clear();
+            if (removed != count || checkSizes(tree.root, null, null) != expected.size()) {
+                System.out.println("Error: Removing [" + a + ", " + b + "] gave the wrong tree. Aborting.");
+                System.exit(1);
+            }
+        }
+    }
+
+    // Several threads insert and delete (disjoint) elements in a sharded tree at
+    // once, then the result is checked against a TreeSet
+    static void testSharded(int numThreads, int numElements) {
+        System.out.println("Testing sharded tree with " + numThreads + " threads (n=" + numElements + ")");
+        ShardedSplayTree<Integer> tree = new ShardedSplayTree<>(8);
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int offset = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(offset);
+                for (int i = 0; i < numElements / numThreads; i++) {
+                    // Each thread owns the elements congruent to its offset
+                    int e = random.nextInt(numElements) * numThreads + offset;
+                    if (i % 3 == 2) tree.delete(e);
+                    else tree.insert(e);
+                    tree.rangeCount(e, e + numElements);
+                }
+            });
+            threads[t].start();
+        }
+
+        // Replay the same operations sequentially for the expected set
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int t = 0; t < numThreads; t++) {
+            Random random = new Random(t);
+            for (int i = 0; i < numElements / numThreads; i++) {
+                int e = random.nextInt(numElements) * numThreads + t;
+                if (i % 3 == 2) expected.remove(e);
+                else expected.add(e);
+            }
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        if (tree.size() != expected.size() || tree.shardCount() < 2) {
+            System.out.println("Error: Sharded tree has " + tree.size() + " elements in " + tree.shardCount()
+                + " shards but " + expected.size() + " were expected. Aborting.");
+            System.exit(1);
+        }
+        for (int i = 0; i < 1000; i++) {
+            int a = rand.nextInt(numElements * numThreads);
+            int b = a + rand.nextInt(numElements * numThreads);
+            if (tree.rangeCount(a, b) != expected.subSet(a, true, b, true).size()) {
+                System.out.println("Error: Sharded tree has the wrong range count. Aborting.");
+                System.exit(1);
+            }
+        }
+
+        // Emptying most of one shard should spread the rest out again
+        ShardedSplayTree<Integer> shrinking = new ShardedSplayTree<>(4);
+        for (int i = 0; i < 40_000; i++) shrinking.insert(i);
+        shrinking.rebalance();
+        for (int i = 0; i < 9_000; i++) shrinking.delete(i);
+        for (ShardedSplayTree.Shard<Integer> shard : shrinking.layout.shards) {
+            if (shard.size < 5_000) {
+                System.out.println("Error: Sharded tree kept a shard of " + shard.size + " elements after deletes. Aborting.");
+                System.exit(1);
+            }
+        }
+        if (shrinking.size() != 31_000 || shrinking.rangeCount(0, 40_000) != 31_000) {
+            System.out.println("Error: Sharded tree lost elements rebalancing after deletes. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Run reads and writes under each splay policy, checking the answers and the
+    // structure of the tree against a TreeSet
+    static void testSplayPolicies(int numOps) {
+        SplayPolicy[] policies = {SplayPolicy.semiSplay(), SplayPolicy.halfwaySplay(), SplayPolicy.depthThreshold(5),
+            SplayPolicy.probabilistic(0.3), SplayPolicy.probabilistic(0)};
+        String[] names = {"semi-splay", "halfway", "depth > 5", "probability 0.3", "never"};
+        for (int p = 0; p < policies.length; p++) {
+            System.out.println("Testing splay policy (" + names[p] + ") over " + numOps + " operations.");
+            SplayTree<Integer> tree = new SplayTree<>();
+            tree.setSplayPolicy(policies[p]);
+            TreeSet<Integer> expected = new TreeSet<>();
+            for (int i = 0; i < numOps; i++) {
+                int e = rand.nextInt(numOps / 2);
+                int b = e + rand.nextInt(numOps / 8 + 1);
+                boolean ok = true;
+                switch (rand.nextInt(5)) {
+                    case 0:
+                        ok = tree.delete(e) == expected.remove(e);
+                        break;
+                    case 1:
+                        ok = tree.rangeCount(e, b) == expected.subSet(e, true, b, true).size();
+                        break;
+                    case 2:
+                        ok = Objects.equals(tree.floor(e), expected.floor(e))
+                            && Objects.equals(tree.ceiling(e), expected.ceiling(e))
+                            && Objects.equals(tree.higher(e), expected.higher(e))
+                            && Objects.equals(tree.lower(e), expected.lower(e))
+                            && (expected.isEmpty() || tree.select(expected.headSet(e).size() % expected.size())
+                                .equals(new ArrayList<>(expected).get(expected.headSet(e).size() % expected.size())));
+                        break;
+                    default:
+                        tree.insert(e);
+                        expected.add(e);
+                }
+                if (!ok || checkSizes(tree.root, null, null) != expected.size()) {
+                    System.out.println("Error: Tree disagrees with expected set after operation " + i + ". Aborting.");
+                    System.exit(1);
+                }
+            }
+        }
+
+        // Semi-splaying the bottom of a path roughly halves the depth of every node on it
+        SplayTree<Integer> path = new SplayTree<>();
+        for (int i = 0; i < 1000; i++) path.insert(i);  // Each insert leaves a left path
+        path.setSplayPolicy(SplayPolicy.semiSplay());
+        path.contains(0);
+        if (checkSizes(path.root, null, null) != 1000 || path.height() > 600 || path.height() < 400) {
+            System.out.println("Error: Semi-splaying a path of 1000 left it " + path.height() + " high. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Check the statistics kept for a tree (on unless run with -Dsplaytree.stats=false)
+    static void testStats() {
+        SplayTree<Integer> tree = new SplayTree<>();
+        if (tree.stats() == null) {
+            System.out.println("Skipping statistics (they are off with -Dsplaytree.stats=false).");
+            return;
+        }
+        System.out.println("Testing statistics.");
+        for (int i = 0; i < 1000; i++) tree.insert(i);  // A path, each insert one step down
+        tree.contains(0);  // Walks the whole path
+        SplayTreeStats stats = tree.stats();
+        if (stats.getInserts() != 1000 || stats.getQueries() != 1 || stats.getMaxDepth() < 999
+                || stats.getRotations() < 999 || stats.getSize() != 1000
+                || stats.getRecentMaxDepth() != stats.getMaxDepth() || tree.height() >= 999) {
+            System.out.println("Error: Statistics are wrong (max depth " + stats.getMaxDepth() + ", rotations "
+                + stats.getRotations() + ", recent max depth " + stats.getRecentMaxDepth() + "). Aborting.");
+            System.exit(1);
+        }
+
+        // Once the tree is shallow again the deep walk drops out of the recent depths
+        for (int i = 0; i < 3 * SplayTreeStats.RECENT_DESCENTS; i++) tree.contains(500);
+        if (stats.getRecentMaxDepth() >= 999 || stats.getMaxDepth() < 999) {
+            System.out.println("Error: Recent max depth is " + stats.getRecentMaxDepth() + " after shallow reads. Aborting.");
+            System.exit(1);
+        }
+
+        // A read which splays afterwards (here within a subtree) is still one descent
+        tree.setSplayPolicy(SplayPolicy.halfwaySplay());
+        for (int i = 0; i < 1000; i += 37) {
+            long descents = stats.getDescents();
+            tree.contains(i);
+            if (stats.getDescents() != descents + 1) {
+                System.out.println("Error: Reading " + i + " recorded " + (stats.getDescents() - descents)
+                    + " descents. Aborting.");
+                System.exit(1);
+            }
+        }
+    }
+
+    // Range sums, maximums and (order sensitive) concatenations of values,
+    // checked against a TreeMap
+    static void testAggregate(int numOps) {
+        System.out.println("Testing aggregates over " + numOps + " operations.");
+        AggregateSplayTree<Integer, Long> sums = new AggregateSplayTree<>(Monoid.longSum());
+        AggregateSplayTree<Integer, Long> maxes = new AggregateSplayTree<>(Monoid.max(Long::compare));
+        AggregateSplayTree<Integer, String> strings = new AggregateSplayTree<>(Monoid.of("", String::concat));
+        TreeMap<Integer, Long> expected = new TreeMap<>();
+        for (int i = 0; i < numOps; i++) {
+            int key = rand.nextInt(numOps / 2);
+            int op = rand.nextInt(4);
+            if (op == 0) {
+                boolean deleted = expected.remove(key) != null;
+                if (sums.delete(key) != deleted || maxes.delete(key) != deleted || strings.delete(key) != deleted) {
+                    System.out.println("Error: delete(" + key + ") reported the wrong result. Aborting.");
+                    System.exit(1);
+                }
+            } else if (op == 1) {
+                int b = key + rand.nextInt(numOps / 8 + 1);
+                SortedMap<Integer, Long> range = expected.subMap(key, true, b, true);
+                long sum = 0;
+                Long max = null;
+                StringBuilder concat = new StringBuilder();
+                for (Map.Entry<Integer, Long> entry : range.entrySet()) {
+                    sum += entry.getValue();
+                    if (max == null || entry.getValue() > max) max = entry.getValue();
+                    concat.append(entry.getKey()).append(',');
+                }
+                if (sums.aggregate(key, b) != sum || !Objects.equals(maxes.aggregate(key, b), max)
+                        || !strings.aggregate(key, b).equals(concat.toString()) || sums.rangeCount(key, b) != range.size()) {
+                    System.out.println("Error: Aggregates over [" + key + ", " + b + "] are wrong. Aborting.");
+                    System.exit(1);
+                }
+            } else {
+                long value = rand.nextInt(1000);
+                sums.put(key, value);
+                maxes.put(key, value);
+                strings.put(key, key + ",");
+                expected.put(key, value);
+            }
+            if (sums.size() != expected.size() || !Objects.equals(sums.get(key), expected.get(key))) {
+                System.out.println("Error: Aggregate tree has the wrong contents after operation " + i + ". Aborting.");
+                System.exit(1);
+            }
+        }
+    }
+
+    // Batched range counts must match a TreeSet and leave the tree untouched
+    static void testRangeCountAll(int numElements, int numRanges) {
+        System.out.println("Testing batched range counts (n=" + numElements + ") and (m=" + numRanges + ")");
+        SplayTree<Integer> tree = new SplayTree<>();
+        IntSplayTree intTree = new IntSplayTree();
+        LongSplayTree longTree = new LongSplayTree();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < numElements; i++) {
+            int e = rand.nextInt(numElements * 3);
+            tree.insert(e);
+            intTree.insert(e);
+            longTree.insert(e);
+            expected.add(e);
+        }
+        Integer[] lows = new Integer[numRanges];
+        Integer[] highs = new Integer[numRanges];
+        int[] intLows = new int[numRanges];
+        int[] intHighs = new int[numRanges];
+        long[] longLows = new long[numRanges];
+        long[] longHighs = new long[numRanges];
+        for (int i = 0; i < numRanges; i++) {
+            lows[i] = rand.nextInt(numElements * 3);
+            highs[i] = lows[i] + rand.nextInt(numElements) - numElements / 10;  // Some ranges are empty
+            intLows[i] = lows[i];
+            intHighs[i] = highs[i];
+            longLows[i] = lows[i];
+            longHighs[i] = highs[i];
+        }
+
+        SplayTree.TreeNode<Integer> root = tree.root;
+        int[] counts = tree.rangeCountAll(lows, highs);
+        int[] intCounts = intTree.rangeCountAll(intLows, intHighs);
+        int[] longCounts = longTree.rangeCountAll(longLows, longHighs);
+        if (tree.root != root) {
+            System.out.println("Error: rangeCountAll changed the tree. Aborting.");
+            System.exit(1);
+        }
+        for (int i = 0; i < numRanges; i++) {
+            int count = lows[i] > highs[i] ? 0 : expected.subSet(lows[i], true, highs[i], true).size();
+            if (counts[i] != count || intCounts[i] != count || longCounts[i] != count) {
+                System.out.println("Error: Batched count of [" + lows[i] + ", " + highs[i] + "] was " + counts[i]
+                    + "/" + intCounts[i] + "/" + longCounts[i] + " but " + count + " was expected. Aborting.");
+                System.exit(1);
+            }
+        }
+    }
+
+    // Save int and long trees to snapshot files and load them back
+    static void testSnapshot(int numElements) {
+        System.out.println("Testing snapshots (n=" + numElements + ")");
+        IntSplayTree intTree = new IntSplayTree();
+        LongSplayTree longTree = new LongSplayTree();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < numElements; i++) {
+            int e = rand.nextInt();
+            intTree.insert(e);
+            longTree.insert(e * 3L);
+            expected.add((long) e);
+        }
+        try {
+            Path intFile = Files.createTempFile("splay", ".int");
+            Path longFile = Files.createTempFile("splay", ".long");
+            intTree.writeSnapshot(intFile);
+            longTree.writeSnapshot(longFile);
+            IntSplayTree intCopy = IntSplayTree.loadSnapshot(intFile);
+            LongSplayTree longCopy = LongSplayTree.loadSnapshot(longFile);
+            boolean wrongType = false;
+            try {
+                LongSplayTree.loadSnapshot(intFile);
+            } catch (IOException e) {
+                wrongType = true;  // Expected: int keys are not long keys
+            }
+            Files.delete(intFile);
+            Files.delete(longFile);
+
+            if (!wrongType || intCopy.size() != expected.size() || longCopy.size() != expected.size()) {
+                System.out.println("Error: Snapshots did not load back correctly. Aborting.");
+                System.exit(1);
+            }
+            for (int i = 0; i < 1000; i++) {
+                int a = rand.nextInt();
+                int b = a + rand.nextInt(Integer.MAX_VALUE / 10);
+                if (b < a) continue;  // Overflowed
+                int count = expected.subSet((long) a, true, (long) b, true).size();
+                if (intCopy.rangeCount(a, b) != count || longCopy.rangeCount(a * 3L, b * 3L) != count) {
+                    System.out.println("Error: Loaded snapshot has the wrong range count. Aborting.");
+                    System.exit(1);
+                }
+            }
+            intCopy.insert(rand.nextInt());  // Still a working tree
+        } catch (IOException e) {
+            System.out.println("Error: " + e + ". Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Insert, delete and count repeated elements in a multiset, checking against
+    // a TreeMap of counts
+    static void testMultiset(int numOps) {
+        System.out.println("Testing multiset over " + numOps + " operations.");
+        SplayTree<Integer> tree = SplayTree.newMultiset();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        int total = 0;
+        int range = numOps / 20 + 1;  // Plenty of repeats
+        for (int i = 0; i < numOps; i++) {
+            int e = rand.nextInt(range);
+            int op = rand.nextInt(6);
+            Integer had = expected.get(e);
+            int count = had == null ? 0 : had;
+            if (op == 0) {
+                if (tree.delete(e) != (count > 0)) {
+                    System.out.println("Error: delete(" + e + ") reported the wrong result. Aborting.");
+                    System.exit(1);
+                }
+                if (count > 1) expected.put(e, count - 1);
+                else expected.remove(e);
+                if (count > 0) total--;
+            } else if (op == 1) {
+                if (tree.deleteAll(e) != count) {
+                    System.out.println("Error: deleteAll(" + e + ") did not delete " + count + " copies. Aborting.");
+                    System.exit(1);
+                }
+                expected.remove(e);
+                total -= count;
+            } else if (op == 2) {
+                int b = e + rand.nextInt(range / 4 + 1);
+                int inRange = 0;
+                for (int c : expected.subMap(e, true, b, true).values()) inRange += c;
+                if (tree.rangeCount(e, b) != inRange || tree.count(e) != count) {
+                    System.out.println("Error: Counts for [" + e + ", " + b + "] are wrong. Aborting.");
+                    System.exit(1);
+                }
+            } else {
+                int times = op == 3 ? 1 + rand.nextInt(3) : 1;
+                tree.insert(e, times);
+                expected.put(e, count + times);
+                total += times;
+            }
+            if (checkSizes(tree.root, null, null) != total) {
+                System.out.println("Error: Multiset has wrong size after operation " + i + ". Aborting.");
+                System.exit(1);
+            }
+        }
+
+        // select walks through every copy, and bulk loading keeps the counts
+        ArrayList<Integer> all = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            for (int c = 0; c < entry.getValue(); c++) all.add(entry.getKey());
+        }
+        for (int k = 0; k < all.size(); k++) {
+            if (!tree.select(k).equals(all.get(k))) {
+                System.out.println("Error: select(" + k + ") is wrong in a multiset. Aborting.");
+                System.exit(1);
+            }
+        }
+        SplayTree<Integer> bulk = SplayTree.newMultiset();
+        Collections.shuffle(all, rand);
+        bulk.buildFrom(all.subList(0, all.size() / 2));
+        bulk.insertAll(all.subList(all.size() / 2, all.size()));
+        if (checkSizes(bulk.root, null, null) != total || (!all.isEmpty() && bulk.count(all.get(0)) != expected.get(all.get(0)))) {
+            System.out.println("Error: Bulk loaded multiset has the wrong counts. Aborting.");
+            System.exit(1);
+        }
+
+        // Copies are counted in an int, so inserts past Integer.MAX_VALUE are refused
+        SplayTree<Integer> full = SplayTree.newMultiset();
+        full.insert(1, Integer.MAX_VALUE);
+        try {
+            full.insert(2);
+            System.out.println("Error: Inserting past Integer.MAX_VALUE copies did not fail. Aborting.");
+            System.exit(1);
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        if (full.size() != Integer.MAX_VALUE || full.rank(2) != Integer.MAX_VALUE || full.contains(2)) {
+            System.out.println("Error: A refused insert changed the multiset. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Churn through a tree with a node pool, checking that deleted nodes are
+    // kept (up to the capacity) and reused without corrupting the tree
+    static void testNodePool(int numOps) {
+        System.out.println("Testing node pool over " + numOps + " operations.");
+        SplayTree<Integer> tree = new SplayTree<>();
+        tree.setNodePool(16);
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < numOps; i++) {
+            int e = rand.nextInt(numOps / 4 + 1);
+            if (rand.nextBoolean()) {
+                tree.delete(e);
+                expected.remove(e);
+            } else {
+                tree.insert(e);
+                expected.add(e);
+            }
+            if (tree.pooledNodes() > 16 || checkSizes(tree.root, null, null) != expected.size()) {
+                System.out.println("Error: Pooled tree is wrong after operation " + i + ". Aborting.");
+                System.exit(1);
+            }
+        }
+        for (int e : expected) tree.delete(e);
+        tree.setNodePool(4);
+        if (tree.pooledNodes() > 4 || tree.size() != 0) {
+            System.out.println("Error: Node pool kept " + tree.pooledNodes() + " nodes. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Stream observations through count and time bounded windows, checking the
+    // counts against a brute-force list of what should still be live
+    static void testWindow(int numOps) {
+        System.out.println("Testing sliding windows over " + numOps + " observations.");
+        long[] now = {0};
+        WindowedSplayTree<Integer> byCount = new WindowedSplayTree<>(100);
+        WindowedSplayTree<Integer> byTime = new WindowedSplayTree<>(Integer.MAX_VALUE, 1_000, () -> now[0], SplayTree.NATURAL_ORDER);
+        ArrayDeque<Integer> countExpected = new ArrayDeque<>();
+        ArrayDeque<long[]> timeExpected = new ArrayDeque<>();  // {time, value}
+        for (int i = 0; i < numOps; i++) {
+            // Mostly small steps, now and then a long pause that empties much of the window
+            now[0] += rand.nextInt(50) == 0 ? rand.nextInt(1_500) : rand.nextInt(20);
+            int e = rand.nextInt(200);
+            byCount.add(e);
+            byTime.add(e);
+            countExpected.addLast(e);
+            if (countExpected.size() > 100) countExpected.removeFirst();
+            timeExpected.addLast(new long[] {now[0], e});
+            while (now[0] - timeExpected.peekFirst()[0] > 1_000) timeExpected.removeFirst();
+
+            int a = rand.nextInt(200);
+            int b = a + rand.nextInt(50);
+            int countInRange = 0, timeInRange = 0;
+            for (int x : countExpected) if (x >= a && x <= b) countInRange++;
+            for (long[] x : timeExpected) if (x[1] >= a && x[1] <= b) timeInRange++;
+            if (byCount.size() != countExpected.size() || byCount.rangeCount(a, b) != countInRange
+                    || byTime.size() != timeExpected.size() || byTime.rangeCount(a, b) != timeInRange) {
+                System.out.println("Error: Window counts are wrong after observation " + i + ". Aborting.");
+                System.exit(1);
+            }
+            checkSizes(byTime.tree.root, null, null);
+        }
+        ArrayList<Integer> sorted = new ArrayList<>(countExpected);
+        Collections.sort(sorted);
+        if (!byCount.select(0).equals(sorted.get(0)) || !byCount.quantile(1).equals(sorted.get(sorted.size() - 1))) {
+            System.out.println("Error: Window order statistics are wrong. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Iterate and stream (sequentially and in parallel) over a path-like tree
+    // from sequential inserts, a random one and a multiset, checking against a TreeSet
+    static void testIteration(int numElements) {
+        System.out.println("Testing iteration and streams (n=" + numElements + ")");
+        SplayTree<Integer> path = new SplayTree<>();
+        for (int i = 0; i < numElements; i++) path.insert(i);
+        int height = path.height();
+        long sum = 0;
+        int expectedNext = 0;
+        for (int e : path) {
+            if (e != expectedNext++) {
+                System.out.println("Error: Iterator returned " + e + " out of order. Aborting.");
+                System.exit(1);
+            }
+            sum += e;
+        }
+        long parallelSum = path.stream().parallel().mapToLong(Integer::longValue).sum();
+        if (expectedNext != numElements || parallelSum != sum || path.height() != height) {
+            System.out.println("Error: Iterating over a path-like tree went wrong. Aborting.");
+            System.exit(1);
+        }
+
+        SplayTree<Integer> tree = new SplayTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 2_000; i++) {
+            int e = rand.nextInt(10_000);
+            tree.insert(e);
+            expected.add(e);
+        }
+        for (int i = 0; i < 100; i++) {
+            int a = rand.nextInt(10_000);
+            int b = a + rand.nextInt(2_000);
+            List<Integer> range = tree.stream(a, b).parallel().collect(Collectors.toList());
+            if (!range.equals(new ArrayList<>(expected.subSet(a, true, b, true)))) {
+                System.out.println("Error: stream(" + a + ", " + b + ") is wrong. Aborting.");
+                System.exit(1);
+            }
+        }
+
+        SplayTree<Integer> multiset = SplayTree.newMultiset();
+        for (int i = 0; i < 1_000; i++) multiset.insert(rand.nextInt(50));
+        ArrayList<Integer> copies = new ArrayList<>();
+        multiset.forEach(copies::add);
+        for (int k = 0; k < copies.size(); k++) {
+            if (!copies.get(k).equals(multiset.select(k))) {
+                System.out.println("Error: Multiset iteration is wrong at " + k + ". Aborting.");
+                System.exit(1);
+            }
+        }
+    }
+
+    // Query sorted and Eytzinger snapshots of a set and a multiset (the latter
+    // from several threads at once), checking them against the live trees
+    static void testSnapshotIndex(int numElements) {
+        System.out.println("Testing snapshot indexes (n=" + numElements + ")");
+        SplayTree<Integer> set = new SplayTree<>();
+        SplayTree<Integer> multiset = SplayTree.newMultiset();
+        for (int i = 0; i < numElements; i++) {
+            set.insert(rand.nextInt(numElements * 2));
+            multiset.insert(rand.nextInt(numElements / 4));
+        }
+        for (SplayTree<Integer> tree : Arrays.asList(set, multiset)) {
+            for (boolean eytzinger : new boolean[] {false, true}) {
+                SplayTreeSnapshot<Integer> snapshot = tree.snapshot(eytzinger);
+                tree.refreshSnapshot(Long.MAX_VALUE);
+                if (tree.latestSnapshot() != snapshot || snapshot.size() != tree.size()) {
+                    System.out.println("Error: Snapshot was not published with the right size. Aborting.");
+                    System.exit(1);
+                }
+                int bound = numElements * 2 + 2;
+                boolean ok = IntStream.range(0, 1_000).parallel().allMatch(i -> {
+                    Random r = new Random(i);
+                    int a = r.nextInt(bound) - 1;
+                    int b = a + r.nextInt(bound / 4);
+                    int k = r.nextInt(snapshot.size());
+                    return snapshot.rangeCount(a, b) == tree.rangeCountAll(new Integer[] {a}, new Integer[] {b})[0]
+                        && snapshot.rank(a) == tree.countLessThan(a, false, false)
+                        && snapshot.select(k).equals(tree.stream().skip(k).findFirst().get());
+                });
+                if (!ok) {
+                    System.out.println("Error: Snapshot (eytzinger=" + eytzinger + ") disagrees with its tree. Aborting.");
+                    System.exit(1);
+                }
+            }
+        }
+        SplayTreeSnapshot<Integer> empty = new SplayTree<Integer>().snapshot(true);
+        if (empty.size() != 0 || empty.rangeCount(0, 10) != 0 || empty.contains(1)) {
+            System.out.println("Error: Empty snapshot is not empty. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // Union, intersect and subtract sets and multisets of very different and
+    // similar sizes (large enough to fork), checking against TreeMaps of counts
+    static void testSetOperations(int numElements) {
+        System.out.println("Testing set operations (n=" + numElements + ")");
+        for (boolean multiset : new boolean[] {false, true}) {
+            for (int otherSize : new int[] {100, numElements}) {
+                for (int op = 0; op < 3; op++) {
+                    SplayTree<Integer> tree = new SplayTree<>(SplayTree.NATURAL_ORDER, multiset);
+                    SplayTree<Integer> other = new SplayTree<>(SplayTree.NATURAL_ORDER, multiset);
+                    TreeMap<Integer, Integer> a = new TreeMap<>();
+                    TreeMap<Integer, Integer> b = new TreeMap<>();
+                    for (int i = 0; i < numElements; i++) {
+                        int e = i % 3 == 0 ? i : rand.nextInt(numElements);  // Partly sequential, so partly path-like
+                        tree.insert(e);
+                        a.merge(e, 1, multiset ? Integer::sum : (x, y) -> 1);
+                    }
+                    for (int i = 0; i < otherSize; i++) {
+                        int e = rand.nextInt(numElements);
+                        other.insert(e);
+                        b.merge(e, 1, multiset ? Integer::sum : (x, y) -> 1);
+                    }
+
+                    TreeMap<Integer, Integer> expected = new TreeMap<>();
+                    TreeSet<Integer> keys = new TreeSet<>(a.keySet());
+                    keys.addAll(b.keySet());
+                    for (int e : keys) {
+                        int x = a.getOrDefault(e, 0), y = b.getOrDefault(e, 0);
+                        int count = op == 0 ? x + y : op == 1 ? Math.min(x, y) : x - y;
+                        if (!multiset) count = Math.min(count, 1);
+                        if (count > 0) expected.put(e, count);
+                    }
+                    if (op == 0) tree.union(other);
+                    else if (op == 1) tree.intersection(other);
+                    else tree.difference(other);
+
+                    int total = 0;
+                    for (int c : expected.values()) total += c;
+                    boolean ok = other.size() == 0 && checkSizes(tree.root, null, null) == total;
+                    for (int i = 0; ok && i < 200; i++) {
+                        int e = rand.nextInt(numElements);
+                        ok = tree.count(e) == expected.getOrDefault(e, 0);
+                    }
+                    if (!ok) {
+                        System.out.println("Error: Set operation " + op + " (multiset=" + multiset + ", other size="
+                            + otherSize + ") is wrong. Aborting.");
+                        System.exit(1);
+                    }
+                }
+            }
+        }
+
+        // Trees ordered differently cannot be merged by walking them together
+        for (int op = 0; op < 3; op++) {
+            SplayTree<Integer> tree = new SplayTree<>();
+            SplayTree<Integer> reversed = new SplayTree<>(Comparator.reverseOrder());
+            for (int i = 0; i < 10; i++) {
+                tree.insert(i);
+                reversed.insert(i + 5);
+            }
+            try {
+                if (op == 0) tree.union(reversed);
+                else if (op == 1) tree.intersection(reversed);
+                else tree.difference(reversed);
+                System.out.println("Error: Set operation " + op + " on trees with different orderings did not fail. Aborting.");
+                System.exit(1);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+            if (checkSizes(tree.root, null, null) != 10 || reversed.size() != 10) {
+                System.out.println("Error: A rejected set operation changed the trees. Aborting.");
+                System.exit(1);
+            }
+        }
+    }
+
+    // Random inserts, deletes and range counts on binary keys sharing long
+    // prefixes (and containing zero and high bytes), checked against a TreeSet
+    static void testBytes(int numOps) {
+        System.out.println("Testing byte[] keys over " + numOps + " operations.");
+        BytesSplayTree tree = new BytesSplayTree();
+        TreeSet<byte[]> expected = new TreeSet<>(Arrays::compareUnsigned);
+        byte[] alphabet = {0, 1, 'a', 'b', (byte) 0x80, (byte) 0xFF};
+        for (int i = 0; i < numOps; i++) {
+            byte[] k = randomKey(alphabet);
+            int op = rand.nextInt(3);
+            if (op == 0) {
+                if (tree.delete(k) != expected.remove(k)) {
+                    System.out.println("Error: delete of a byte[] key reported the wrong result. Aborting.");
+                    System.exit(1);
+                }
+            } else if (op == 1) {
+                byte[] b = randomKey(alphabet);
+                if (Arrays.compareUnsigned(k, b) > 0) {
+                    byte[] swap = k;
+                    k = b;
+                    b = swap;
+                }
+                if (tree.rangeCount(k, b) != expected.subSet(k, true, b, true).size()
+                        || tree.contains(k) != expected.contains(k)) {
+                    System.out.println("Error: rangeCount on byte[] keys is wrong. Aborting.");
+                    System.exit(1);
+                }
+            } else {
+                tree.insert(k);
+                expected.add(k);
+            }
+            if (tree.size() != expected.size()) {
+                System.out.println("Error: byte[] tree has wrong size after operation " + i + ". Aborting.");
+                System.exit(1);
+            }
+        }
+
+        BytesSplayTree strings = new BytesSplayTree();
+        for (String s : new String[] {"apple", "kiwi", "banana", "fig", "cherry", "date", "applesauce"}) strings.insert(s);
+        if (strings.rangeCount("apple", "banana") != 3 || !strings.contains("applesauce") || strings.contains("apples")) {
+            System.out.println("Error: String keys are wrong. Aborting.");
+            System.exit(1);
+        }
+    }
+
+    // A key of 0 to 19 bytes, most of them sharing a prefix longer than the cached one
+    static byte[] randomKey(byte[] alphabet) {
+        byte[] k = new byte[rand.nextInt(20)];
+        for (int i = 0; i < k.length; i++) k[i] = i < 10 && rand.nextInt(4) > 0 ? (byte) 'p' : alphabet[rand.nextInt(alphabet.length)];
+        return k;
+    }
+
+    // Scan forwards and backwards with a cursor (deleting some elements under it
+    // and seeking around), checking against a TreeSet
+    static void testCursor(int numElements) {
+        System.out.println("Testing cursors (n=" + numElements + ")");
+        SplayTree<Integer> tree = new SplayTree<>();
+        tree.setSplayPolicy(SplayPolicy.halfwaySplay());  // Cursors must splay fully anyway
+        TreeSet<Integer> expected = new TreeSet<>();
+        SplayTreeCursor<Integer> appender = tree.cursor();
+        for (int i = 0; i < numElements; i++) {
+            int e = 3 * i + rand.nextInt(3);  // Always just above the maximum
+            appender.insert(e);
+            expected.add(e);
+        }
+
+        SplayTreeCursor<Integer> cursor = tree.cursor();
+        Integer e = expected.first();
+        for (int i = 0; e != null; i++) {
+            if (!e.equals(cursor.get()) || cursor.rank() != expected.headSet(e).size()) {
+                System.out.println("Error: Cursor is on " + cursor.get() + " but should be on " + e + ". Aborting.");
+                System.exit(1);
+            }
+            if (i % 5 == 0) {
+                cursor.delete();
+                expected.remove(e);
+            }
+            cursor.next();
+            e = expected.higher(e);
+        }
+        if (cursor.get() != null || cursor.next() != null) {
+            System.out.println("Error: Cursor did not stop after the last element. Aborting.");
+            System.exit(1);
+        }
+
+        for (int i = 0; i < 1_000; i++) {
+            int target = rand.nextInt(3 * numElements + 10) - 5;
+            Integer at = cursor.seek(target);
+            Integer back = cursor.prev();
+            if (!Objects.equals(at, expected.ceiling(target))
+                    || (at != null && !Objects.equals(back, expected.lower(at)))) {
+                System.out.println("Error: Cursor seek/prev around " + target + " is wrong. Aborting.");
+                System.exit(1);
+            }
+        }
+        checkSizes(tree.root, null, null);
+    }
 }
@@ -0,0 +1,176 @@
+/****************
+ * Windowed Splay Tree
+ * Spring 2024
+ *
+ * A sliding window over a stream of observations: only the last maxCount
+ * observations (or those younger than maxAge) are live, and rangeCount, rank,
+ * select and quantile answer for those alone. Older observations are evicted
+ * automatically, so callers no longer keep their own queue next to the tree
+ * and delete from it by hand.
+ *
+ * NOTE:
+ * The live observations are kept twice: in arrival order in a ring buffer
+ * (with their arrival times, for a timed window) and in key order in a
+ * multiset SplayTree, since the same value can be observed many times.
+ * Evicting k observations normally deletes them one at a time, O(k log n).
+ * Rebuilding from the ring buffer has to sort the survivors, O((n - k) log n),
+ * so it is only done when more than half of the window goes at once (e.g.
+ * after a long pause in a timed window).
+ *
+ * The tree keeps a small node pool, so a full window in its steady state
+ * (one eviction per insert) does not allocate nodes.
+ */
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.LongSupplier;
+
+public class WindowedSplayTree<E> {
+    static final int POOL_CAPACITY = 64;  // Deleted nodes kept for reuse
+
+    final SplayTree<E> tree;
+    final int maxCount;        // Most observations in the window
+    final long maxAgeNanos;    // Oldest observation kept (Long.MAX_VALUE = no limit)
+    final LongSupplier clock;  // Current time in nanoseconds
+
+    // Ring buffer of the live observations in arrival order
+    Object[] elements = new Object[16];
+    long[] times = new long[16];
+    int head;   // Oldest observation
+    int count;  // Number of live observations
+
+    // Create a window over the last maxCount observations, ordered by the
+    // elements' natural ordering
+    public WindowedSplayTree(int maxCount) {
+        this(maxCount, SplayTree.NATURAL_ORDER);
+    }
+
+    // Create a window over the last maxCount observations, ordered by the given comparator
+    public WindowedSplayTree(int maxCount, Comparator<? super E> comparator) {
+        this(maxCount, Long.MAX_VALUE, System::nanoTime, comparator);
+    }
+
+    // Create a window over the observations made in the last maxAge, ordered by
+    // the elements' natural ordering
+    public WindowedSplayTree(Duration maxAge) {
+        this(maxAge, SplayTree.NATURAL_ORDER);
+    }
+
+    // Create a window over the observations made in the last maxAge, ordered by
+    // the given comparator
+    public WindowedSplayTree(Duration maxAge, Comparator<? super E> comparator) {
+        this(Integer.MAX_VALUE, maxAge.toNanos(), System::nanoTime, comparator);
+    }
+
+    // Create a window over at most the last maxCount observations, none older
+    // than maxAgeNanos by clock (in nanoseconds, e.g. System::nanoTime).
+    // Integer.MAX_VALUE and Long.MAX_VALUE leave the count or age unbounded.
+    public WindowedSplayTree(int maxCount, long maxAgeNanos, LongSupplier clock, Comparator<? super E> comparator) {
+        if (maxCount < 1) throw new IllegalArgumentException("Window must hold at least one observation: " + maxCount);
+        if (maxAgeNanos <= 0) throw new IllegalArgumentException("Window must be longer than zero: " + maxAgeNanos + "ns");
+        if (clock == null) throw new NullPointerException("clock");
+        this.maxCount = maxCount;
+        this.maxAgeNanos = maxAgeNanos;
+        this.clock = clock;
+        tree = new SplayTree<>(comparator, true);
+        tree.setNodePool(POOL_CAPACITY);
+    }
+
+    // Observe element, evicting whatever falls out of the window
+    public void add(E element) {
+        long now = maxAgeNanos == Long.MAX_VALUE ? 0 : clock.getAsLong();
+        evict(count - maxCount + 1, now);
+        if (count == elements.length) grow();
+        int tail = (head + count) % elements.length;
+        elements[tail] = element;
+        times[tail] = now;
+        count++;
+        tree.insert(element);
+    }
+
+    // Number of observations in the window
+    public int size() {
+        expire();
+        return count;
+    }
+
+    // Returns how many observations in the window are between a (inclusive)
+    // and b (inclusive). Assumes a <= b.
+    public int rangeCount(E a, E b) {
+        expire();
+        return tree.rangeCount(a, b);
+    }
+
+    // Returns how many observations in the window are strictly less than e
+    public int rank(E e) {
+        expire();
+        return tree.rank(e);
+    }
+
+    // Returns the k-th smallest observation in the window (k = 0 is the smallest)
+    public E select(int k) {
+        expire();
+        return tree.select(k);
+    }
+
+    // Returns the observation at quantile q of the window (see SplayTree.quantile)
+    public E quantile(double q) {
+        expire();
+        return tree.quantile(q);
+    }
+
+    // Drop every observation
+    public void clear() {
+        Arrays.fill(elements, null);
+        head = count = 0;
+        tree.root = null;
+    }
+
+    // *************************************
+    // Helper functions
+    // *************************************
+    // Evict the observations that have aged out of a timed window
+    void expire() {
+        if (maxAgeNanos != Long.MAX_VALUE) evict(0, clock.getAsLong());
+    }
+
+    // Evict at least the oldest atLeast observations, and any older than maxAge at time now
+    void evict(int atLeast, long now) {
+        int k = Math.max(0, atLeast);
+        if (maxAgeNanos != Long.MAX_VALUE) {
+            while (k < count && now - times[(head + k) % elements.length] > maxAgeNanos) k++;
+        }
+        if (k == 0) return;
+
+        int n = count - k;
+        boolean rebuild = k > count / 2;
+        if (rebuild) {
+            // Cheaper to sort what is left than to delete most of the window
+            @SuppressWarnings("unchecked")
+            E[] live = (E[]) new Object[n];
+            for (int i = 0; i < n; i++) live[i] = SplayTree.elementAt(elements, (head + k + i) % elements.length);
+            tree.buildFrom(Arrays.asList(live));
+        }
+        for (int i = 0; i < k; i++) {
+            int index = (head + i) % elements.length;
+            if (!rebuild) tree.delete(SplayTree.elementAt(elements, index));
+            elements[index] = null;
+        }
+        head = (head + k) % elements.length;
+        count = n;
+    }
+
+    // Double the ring buffer, unrolling it so the oldest observation is first
+    void grow() {
+        int capacity = elements.length * 2;
+        Object[] newElements = new Object[capacity];
+        long[] newTimes = new long[capacity];
+        for (int i = 0; i < count; i++) {
+            newElements[i] = elements[(head + i) % elements.length];
+            newTimes[i] = times[(head + i) % times.length];
+        }
+        elements = newElements;
+        times = newTimes;
+        head = 0;
+    }
+}